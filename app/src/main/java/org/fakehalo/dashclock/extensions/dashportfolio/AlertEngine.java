@@ -0,0 +1,333 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Threshold alerts ("AAPL>2%, GOOG<-1.5%, SPY>+3") compiled into sorted thresholds per symbol, field and direction.
+// Evaluating a quote binary searches for the thresholds (and re-arm levels) crossed since that symbol's previous value,
+// so the cost follows how far the value moved, not the number of rules. A rule that fired stays quiet until the value
+// backs off past its hysteresis band, and never fires again within the cooldown: a crossing during the cooldown is
+// deferred, firing on the first evaluation after it if the value is still past the threshold. Editing the rules keeps
+// the state of the ones that didn't change. Not thread-safe.
+public class AlertEngine {
+    public static final long DEFAULT_COOLDOWN_MS = 30 * 60 * 1000L;
+    public static final double HYSTERESIS_FRACTION = 0.1; // Of the threshold, how far back a value must go to re-arm.
+    public static final double MIN_HYSTERESIS = 0.05;
+    private static final Pattern RULE_PATTERN = Pattern.compile("([A-Za-z0-9.^-]+)\\s*([<>])\\s*([+-]?[0-9]*\\.?[0-9]+)\\s*(%?)");
+
+    // Index of a rule set, [field][direction].
+    private static final int FIELD_PERCENT = 0;
+    private static final int FIELD_CHANGE = 1;
+    private static final int DIRECTION_ABOVE = 0;
+    private static final int DIRECTION_BELOW = 1;
+
+    private final HashMap<String, RuleSet[][]> index = new HashMap<String, RuleSet[][]>();
+    private String configKey = null;
+    private long cooldownMs = DEFAULT_COOLDOWN_MS;
+    private int ruleCount = 0;
+    private long rulesVisited = 0;
+
+    public static class Rule {
+        public final String symbol;
+        public final boolean above; // Fires on value >= threshold, otherwise on value <= threshold.
+        public final boolean percent; // Percent change, otherwise price change.
+        public final double threshold;
+        final double hysteresis;
+        boolean armed = true;
+        boolean deferred = false; // Crossed during the cooldown, waiting for it to end.
+        long lastFired = 0; // 0 = never.
+
+        Rule(String symbol, boolean above, boolean percent, double threshold) {
+            this.symbol = symbol;
+            this.above = above;
+            this.percent = percent;
+            this.threshold = threshold;
+            this.hysteresis = Math.max(MIN_HYSTERESIS, Math.abs(threshold) * HYSTERESIS_FRACTION);
+        }
+
+        // Identifies the rule across configure() calls.
+        String key() {
+            return symbol + (above ? '>' : '<') + threshold + (percent ? "%" : "");
+        }
+    }
+
+    public static class Alert {
+        public final Rule rule;
+        public final double value; // The value that crossed.
+        Alert(Rule rule, double value) {
+            this.rule = rule;
+            this.value = value;
+        }
+    }
+
+    // Rules for one symbol, field and direction, sorted by threshold and separately by re-arm level.
+    private static class RuleSet {
+        final Rule[] rules;
+        final double[] thresholds;
+        final Rule[] byRearm;
+        final double[] rearmLevels; // Threshold backed off by the hysteresis, away from the firing side.
+        double last = Double.NaN; // Value at the previous evaluation.
+        final List<Rule> deferred = new ArrayList<Rule>(); // Rules with a crossing held back by the cooldown.
+
+        RuleSet(List<Rule> list) {
+            rules = sorted(list, false);
+            thresholds = new double[rules.length];
+            for (int i = 0; i < rules.length; i++)
+                thresholds[i] = rules[i].threshold;
+            byRearm = sorted(list, true);
+            rearmLevels = new double[byRearm.length];
+            for (int i = 0; i < byRearm.length; i++)
+                rearmLevels[i] = rearmLevel(byRearm[i]);
+        }
+
+        private static Rule[] sorted(List<Rule> list, final boolean rearm) {
+            Rule[] ret = list.toArray(new Rule[list.size()]);
+            Arrays.sort(ret, new Comparator<Rule>() {
+                @Override
+                public int compare(Rule a, Rule b) {
+                    return rearm ? Double.compare(rearmLevel(a), rearmLevel(b)) : Double.compare(a.threshold, b.threshold);
+                }
+            });
+            return ret;
+        }
+
+        private static double rearmLevel(Rule r) {
+            return r.above ? r.threshold - r.hysteresis : r.threshold + r.hysteresis;
+        }
+    }
+
+    public void setCooldown(long cooldownMs) {
+        this.cooldownMs = cooldownMs;
+    }
+
+    // Compile rules from preference text, a no-op if unchanged. Unparseable parts are ignored.
+    // Rules that were already there keep their state (armed, cooldown, last value seen), new ones start armed.
+    public void configure(String rulesPref) {
+        String key = rulesPref != null ? rulesPref : "";
+        if (key.equals(configKey))
+            return;
+        configKey = key;
+
+        HashMap<String, List<Rule>[][]> lists = new HashMap<String, List<Rule>[][]>();
+        ruleCount = 0;
+        Matcher m = RULE_PATTERN.matcher(key);
+        while (m.find()) {
+            double threshold;
+            try {
+                threshold = Double.parseDouble(m.group(3));
+            }
+            catch (NumberFormatException e) {
+                continue;
+            }
+            Rule rule = new Rule(m.group(1).toUpperCase(), m.group(2).equals(">"), !m.group(4).isEmpty(), threshold);
+            List<Rule>[][] l = lists.get(rule.symbol);
+            if (l == null) {
+                l = newListArray();
+                lists.put(rule.symbol, l);
+            }
+            l[rule.percent ? FIELD_PERCENT : FIELD_CHANGE][rule.above ? DIRECTION_ABOVE : DIRECTION_BELOW].add(rule);
+            ruleCount++;
+        }
+
+        HashMap<String, RuleSet[][]> previous = new HashMap<String, RuleSet[][]>(index);
+        index.clear();
+        for (String symbol : lists.keySet()) {
+            List<Rule>[][] l = lists.get(symbol);
+            RuleSet[][] old = previous.get(symbol);
+            RuleSet[][] sets = new RuleSet[2][2];
+            for (int f = 0; f < 2; f++) {
+                for (int d = 0; d < 2; d++) {
+                    if (l[f][d].isEmpty())
+                        continue;
+                    sets[f][d] = new RuleSet(l[f][d]);
+                    if (old != null && old[f][d] != null)
+                        carryOver(old[f][d], sets[f][d]);
+                }
+            }
+            index.put(symbol, sets);
+        }
+    }
+
+    // Carry from's state over to the unchanged rules of to, so editing the rules doesn't repeat alerts that already went off.
+    private static void carryOver(RuleSet from, RuleSet to) {
+        to.last = from.last;
+        HashMap<String, Rule> rules = new HashMap<String, Rule>();
+        for (Rule r : from.rules)
+            rules.put(r.key(), r);
+        for (Rule r : to.rules) {
+            Rule o = rules.get(r.key());
+            if (o == null)
+                continue;
+            r.armed = o.armed;
+            r.lastFired = o.lastFired;
+            r.deferred = o.deferred;
+            if (r.deferred)
+                to.deferred.add(r);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Rule>[][] newListArray() {
+        List<Rule>[][] ret = new List[2][2];
+        for (int f = 0; f < 2; f++) {
+            for (int d = 0; d < 2; d++)
+                ret[f][d] = new ArrayList<Rule>();
+        }
+        return ret;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    // Rules re-armed or fired (or skipped by cooldown) so far, confirms the cost follows the moves not the rule count.
+    public long getRulesVisited() {
+        return rulesVisited;
+    }
+
+    // Take si as the previous value of rule sets that have none yet, without firing. Rules it's already past count
+    // as fired, so a restarted process doesn't repeat alerts for quotes restored from the snapshot.
+    public void seed(SymbolInfo si) {
+        if (si.Error)
+            return;
+        RuleSet[][] sets = index.get(si.Symbol);
+        if (sets == null)
+            return;
+        seedAbove(sets[FIELD_PERCENT][DIRECTION_ABOVE], si.Percent);
+        seedBelow(sets[FIELD_PERCENT][DIRECTION_BELOW], si.Percent);
+        seedAbove(sets[FIELD_CHANGE][DIRECTION_ABOVE], si.Change);
+        seedBelow(sets[FIELD_CHANGE][DIRECTION_BELOW], si.Change);
+    }
+
+    private static void seedAbove(RuleSet set, double value) {
+        if (set == null || !Double.isNaN(set.last))
+            return;
+        for (int i = 0; i < upperBound(set.thresholds, value); i++)
+            set.rules[i].armed = false;
+        set.last = value;
+    }
+
+    private static void seedBelow(RuleSet set, double value) {
+        if (set == null || !Double.isNaN(set.last))
+            return;
+        for (int i = lowerBound(set.thresholds, value); i < set.thresholds.length; i++)
+            set.rules[i].armed = false;
+        set.last = value;
+    }
+
+    // Evaluate a changed quote, adding any alerts that fired to out. Only needs calling for quotes that changed.
+    public void evaluate(SymbolInfo si, long now, List<Alert> out) {
+        if (si.Error)
+            return;
+        RuleSet[][] sets = index.get(si.Symbol);
+        if (sets == null)
+            return;
+        evaluateAbove(sets[FIELD_PERCENT][DIRECTION_ABOVE], si.Percent, now, out);
+        evaluateBelow(sets[FIELD_PERCENT][DIRECTION_BELOW], si.Percent, now, out);
+        evaluateAbove(sets[FIELD_CHANGE][DIRECTION_ABOVE], si.Change, now, out);
+        evaluateBelow(sets[FIELD_CHANGE][DIRECTION_BELOW], si.Change, now, out);
+    }
+
+    // Re-arm rules whose level the value dropped below, then fire those with thresholds in (last, value].
+    // (every rule at or below value the first time)
+    private void evaluateAbove(RuleSet set, double value, long now, List<Alert> out) {
+        if (set == null)
+            return;
+        if (value < set.last) {
+            for (int i = upperBound(set.rearmLevels, value); i < upperBound(set.rearmLevels, set.last); i++) {
+                set.byRearm[i].armed = true;
+                rulesVisited++;
+            }
+        }
+        int from = Double.isNaN(set.last) ? 0 : upperBound(set.thresholds, set.last);
+        int to = upperBound(set.thresholds, value);
+        for (int i = from; i < to; i++) {
+            rulesVisited++;
+            fire(set, set.rules[i], value, now, out);
+        }
+        set.last = value;
+        fireDeferred(set, value, now, out);
+    }
+
+    // Re-arm rules whose level the value rose above, then fire those with thresholds in [value, last).
+    // (every rule at or above value the first time)
+    private void evaluateBelow(RuleSet set, double value, long now, List<Alert> out) {
+        if (set == null)
+            return;
+        if (value > set.last) {
+            for (int i = lowerBound(set.rearmLevels, set.last); i < lowerBound(set.rearmLevels, value); i++) {
+                set.byRearm[i].armed = true;
+                rulesVisited++;
+            }
+        }
+        int from = lowerBound(set.thresholds, value);
+        int to = Double.isNaN(set.last) ? set.thresholds.length : lowerBound(set.thresholds, set.last);
+        for (int i = to - 1; i >= from; i--) { // Nearest threshold first, like the above case.
+            rulesVisited++;
+            fire(set, set.rules[i], value, now, out);
+        }
+        set.last = value;
+        fireDeferred(set, value, now, out);
+    }
+
+    private void fire(RuleSet set, Rule r, double value, long now, List<Alert> out) {
+        if (!r.armed)
+            return;
+        if (r.lastFired != 0 && now - r.lastFired < cooldownMs) {
+            if (!r.deferred) {
+                r.deferred = true;
+                set.deferred.add(r);
+            }
+            return;
+        }
+        r.armed = false;
+        r.deferred = false;
+        r.lastFired = now;
+        out.add(new Alert(r, value));
+    }
+
+    // Fire deferred rules whose cooldown is over if value is still past them, drop those it no longer is.
+    private void fireDeferred(RuleSet set, double value, long now, List<Alert> out) {
+        for (int i = set.deferred.size() - 1; i >= 0; i--) {
+            Rule r = set.deferred.get(i);
+            if (r.deferred && (r.above ? value >= r.threshold : value <= r.threshold)) {
+                if (now - r.lastFired < cooldownMs)
+                    continue;
+                fire(set, r, value, now, out);
+            }
+            r.deferred = false;
+            set.deferred.remove(i);
+        }
+    }
+
+    // First index with a[i] > x.
+    private static int upperBound(double[] a, double x) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= x)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // First index with a[i] >= x.
+    private static int lowerBound(double[] a, double x) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < x)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
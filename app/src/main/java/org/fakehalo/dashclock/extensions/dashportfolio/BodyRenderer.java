@@ -0,0 +1,160 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+
+// Renders the expanded body ("AAPL[+1.23%] GOOG[-0.50%] ...") into one reused buffer with a hand-rolled 2 decimal
+// formatter, producing the same text String.format("%s%.2f%%") did. Stops at a character budget with a "+N more"
+// suffix instead of building text DashClock would never show. Display modes other than MODE_QUOTE add intraday
+// history from a QuoteHistory to each symbol. Not thread-safe.
+public class BodyRenderer {
+    public static final String ERROR_TEXT = "ERR";
+    public static final String MODE_QUOTE = "quote"; // AAPL[+1.23%]
+    public static final String MODE_TREND = "trend"; // AAPL[+1.23% \u25B20.40], the move over the last TREND_WINDOW_MS.
+    public static final String MODE_RANGE = "range"; // AAPL[+1.23% -0.50..+1.80], intraday low and high.
+    public static final String MODE_SPARKLINE = "sparkline"; // AAPL[\u2582\u2583\u2585\u2587 +1.23%]
+    public static final long TREND_WINDOW_MS = 30 * 60 * 1000L;
+    public static final int SPARKLINE_WIDTH = 8;
+    private static final double FAST_PATH_LIMIT = 1e6; // Below this value * 100 is exact enough to spot rounding ties.
+    private static final double TIE_EPSILON = 1e-6;
+
+    private final StringBuilder sb = new StringBuilder(256);
+    private Locale locale; // Formatting symbols follow the default locale, like String.format.
+    private char zeroDigit;
+    private char decimalSeparator;
+
+    // Body text for symbols (already ordered), hidden = symbols left out before rendering. (ie. by a top N limit)
+    public String renderBody(List<SymbolInfo> symbols, boolean showPrice, int budget, int hidden) {
+        return renderBody(symbols, showPrice, MODE_QUOTE, null, budget, hidden);
+    }
+
+    // Same as above in a display mode, history may be null. (plain quotes)
+    public String renderBody(List<SymbolInfo> symbols, boolean showPrice, String mode, QuoteHistory history, int budget, int hidden) {
+        if (history == null)
+            mode = MODE_QUOTE;
+        updateLocale();
+        sb.setLength(0);
+        int count = symbols.size();
+        int suffixReserve = ("+" + (count + hidden) + " more").length();
+        int shown = 0;
+        for (SymbolInfo si : symbols) {
+            int mark = sb.length();
+            sb.append(si.Symbol).append('[');
+            if (si.Error)
+                sb.append(ERROR_TEXT);
+            else {
+                if (MODE_SPARKLINE.equals(mode)) {
+                    int start = sb.length();
+                    history.appendSparkline(sb, si.Symbol, showPrice, SPARKLINE_WIDTH);
+                    if (sb.length() > start)
+                        sb.append(' ');
+                }
+                if (showPrice)
+                    appendSigned(si.Change);
+                else // Show percentage.
+                    appendSigned(si.Percent).append('%');
+                if (MODE_TREND.equals(mode))
+                    appendTrend(history.delta(si.Symbol, showPrice, TREND_WINDOW_MS));
+                else if (MODE_RANGE.equals(mode))
+                    appendRange(history.low(si.Symbol, showPrice), history.high(si.Symbol, showPrice));
+            }
+            sb.append("] ");
+
+            // Over budget, back this symbol out. The last one doesn't need room for the suffix.
+            boolean last = shown == count - 1 && hidden == 0;
+            if (sb.length() > budget - (last ? 0 : suffixReserve)) {
+                sb.setLength(mark);
+                break;
+            }
+            shown++;
+        }
+
+        int more = count - shown + hidden;
+        if (more > 0)
+            sb.append('+').append(more).append(" more");
+        return sb.toString();
+    }
+
+    // Percent with an explicit '+' for gains, or ERR. (status line / title)
+    public String formatPercent(SymbolInfo si) {
+        if (si.Error)
+            return ERROR_TEXT;
+        updateLocale();
+        sb.setLength(0);
+        appendSigned(si.Percent).append('%');
+        return sb.toString();
+    }
+
+    // " \u25B20.40" / " \u25BC0.40", nothing if flat or unknown.
+    private void appendTrend(double delta) {
+        if (Double.isNaN(delta) || delta == 0)
+            return;
+        sb.append(' ').append(delta > 0 ? '\u25B2' : '\u25BC');
+        appendFixed(Math.abs(delta));
+    }
+
+    // " -0.50..+1.80", nothing if unknown.
+    private void appendRange(double low, double high) {
+        if (Double.isNaN(low) || Double.isNaN(high))
+            return;
+        sb.append(' ');
+        appendSigned(low).append("..");
+        appendSigned(high);
+    }
+
+    private void updateLocale() {
+        Locale current = Locale.getDefault();
+        if (current.equals(locale))
+            return;
+        DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(current);
+        zeroDigit = dfs.getZeroDigit();
+        decimalSeparator = dfs.getDecimalSeparator();
+        locale = current;
+    }
+
+    // Same as String.format("%s%.2f", (value > 0 ? "+" : ""), value).
+    private StringBuilder appendSigned(double value) {
+        if (value > 0)
+            sb.append('+');
+        return appendFixed(value);
+    }
+
+    // Same as String.format("%.2f", value).
+    private StringBuilder appendFixed(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= FAST_PATH_LIMIT) {
+            sb.append(String.format("%.2f", value)); // Never expected for quotes, not worth a fast path.
+            return sb;
+        }
+        if (Double.compare(value, 0.0) < 0) // Includes -0.0, which Formatter prints as "-0.00".
+            sb.append('-');
+
+        long cents = roundCents(Math.abs(value));
+        appendDigits(cents / 100);
+        sb.append(decimalSeparator);
+        long fraction = cents % 100;
+        sb.append((char)(zeroDigit + fraction / 10));
+        sb.append((char)(zeroDigit + fraction % 10));
+        return sb;
+    }
+
+    // Round half up to hundredths, on the shortest decimal representation of the value like Formatter does.
+    private static long roundCents(double value) {
+        double scaled = value * 100;
+        long floor = (long)scaled;
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) > TIE_EPSILON)
+            return fraction > 0.5 ? floor + 1 : floor;
+
+        // Near a tie (ie. 1.005) binary rounding can go either way, settle it on the decimal digits.
+        return new BigDecimal(Double.toString(value)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    private void appendDigits(long value) {
+        if (value >= 10)
+            appendDigits(value / 10);
+        sb.append((char)(zeroDigit + value % 10));
+    }
+}
@@ -0,0 +1,127 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Quotes from a finance .csv endpoint (f=sc6p2), symbols appended comma separated to baseUrl. Keeps the last parse of
+// recent urls so a 304 is answered with a copy instead of a download and parse, as is a 200 whose body hashes the same
+// as the last one. (the feed rarely sends 304s, but after the close every body repeats)
+public class CsvQuoteProvider implements QuoteProvider {
+    private static final int LAST_PARSE_CACHE_SIZE = 16; // Distinct batch urls worth remembering.
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String baseUrl;
+    private final QuoteTransport transport;
+    private final ThreadLocal<QuoteCsvParser> parsers = new ThreadLocal<QuoteCsvParser>() {
+        @Override
+        protected QuoteCsvParser initialValue() {
+            return new QuoteCsvParser();
+        }
+    };
+    private final LinkedHashMap<String, LastParse> lastParse = new LinkedHashMap<String, LastParse>(LAST_PARSE_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LastParse> eldest) {
+            return size() > LAST_PARSE_CACHE_SIZE;
+        }
+    };
+
+    private static class LastParse {
+        final List<SymbolInfo> rows = new ArrayList<SymbolInfo>();
+        int length; // Body the rows were parsed from.
+        long hash;
+    }
+
+    public CsvQuoteProvider(String baseUrl, QuoteTransport transport) {
+        this.baseUrl = baseUrl;
+        this.transport = transport;
+    }
+
+    @Override
+    public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from)
+                sb.append(',');
+            sb.append(symbols[i]);
+        }
+        String url = baseUrl + URLEncoder.encode(sb.toString(), "utf-8");
+
+        // Only ask for a 304 if we still hold the parse it would refer to.
+        boolean haveLast;
+        synchronized (lastParse) {
+            haveLast = lastParse.containsKey(url);
+        }
+        QuoteTransport.Response response = transport.get(url, haveLast);
+        if (response.notModified) {
+            synchronized (lastParse) {
+                LastParse last = lastParse.get(url);
+                if (last != null) {
+                    Metrics.PARSES_SKIPPED.increment();
+                    return copy(last.rows, last.rows.size(), slots);
+                }
+            }
+            throw new IOException("Not modified without a previous response: " + url);
+        }
+
+        // Same bytes as last time, the parse would come out the same too.
+        long hash = hash(response.body, response.length);
+        synchronized (lastParse) {
+            LastParse last = lastParse.get(url);
+            if (last != null && last.length == response.length && last.hash == hash) {
+                Metrics.PARSES_SKIPPED.increment();
+                return copy(last.rows, last.rows.size(), slots);
+            }
+        }
+
+        long start = Metrics.PARSE.start();
+        int rows = parsers.get().parse(response.body, response.length, slots);
+        Metrics.PARSE.stop(start);
+        Metrics.ROWS_PARSED.add(rows);
+        synchronized (lastParse) {
+            LastParse last = lastParse.get(url);
+            if (last == null)
+                last = new LastParse();
+            copy(slots, rows, last.rows);
+            while (last.rows.size() > rows)
+                last.rows.remove(last.rows.size() - 1);
+            last.length = response.length;
+            last.hash = hash;
+            lastParse.put(url, last);
+        }
+        return rows;
+    }
+
+    @Override
+    public void abort(Thread thread) {
+        transport.abort(thread);
+    }
+
+    // 64-bit FNV-1a of the first length bytes, a collision between two bodies of one url isn't a practical concern.
+    static long hash(byte[] bytes, int length) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    // Copy the first rows entries of src into dst's (reused) entries.
+    private static int copy(List<SymbolInfo> src, int rows, List<SymbolInfo> dst) {
+        for (int i = 0; i < rows; i++) {
+            if (i == dst.size())
+                dst.add(new SymbolInfo());
+            SymbolInfo s = src.get(i), d = dst.get(i);
+            d.Symbol = s.Symbol;
+            d.Change = s.Change;
+            d.Percent = s.Percent;
+            d.Error = s.Error;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,16 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.TimeZone;
+
+// Trading sessions of an exchange, in the exchange's own time zone. Dates use java.util.Calendar fields. (month is 0-11)
+public interface ExchangeCalendar {
+
+    // The exchange's zone, session minutes below are wall clock minutes in this zone.
+    TimeZone getTimeZone();
+
+    // Minutes after local midnight the session opens, -1 if the exchange is closed all day. (weekends, holidays)
+    int getOpenMinute(int year, int month, int day, boolean extendedHours);
+
+    // Minutes after local midnight the session closes, -1 if the exchange is closed all day.
+    int getCloseMinute(int year, int month, int day, boolean extendedHours);
+}
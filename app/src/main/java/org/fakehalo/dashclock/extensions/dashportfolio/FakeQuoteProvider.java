@@ -0,0 +1,109 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+// In-process quote source for demos and load tests, no network involved. Every value (quotes, row errors, request
+// failures and latency) is derived from the seed, the symbol and the generation, so the same inputs always give the
+// same output regardless of thread timing. advance() moves the "market" to its next state.
+public class FakeQuoteProvider implements QuoteProvider {
+    private static final double MAX_PERCENT = 5; // Quotes move within +/- this percent.
+    private static final long MAX_LATENCY_FACTOR = 10; // Latency tail cap, as a multiple of the mean.
+
+    private final long seed;
+    private final long latencyMs; // Mean, exponentially distributed to give a realistic slow tail.
+    private final double errorRate; // Chance of a row coming back as an error. (ie. "N/A" from the real feed)
+    private final int rowLimit; // Most rows in one response, extra symbols are dropped like a truncated response. (0 = no limit)
+    private volatile double failureRate = 0; // Chance of a whole request failing.
+    private volatile long generation = 0;
+
+    public FakeQuoteProvider(long seed, long latencyMs, double errorRate, int rowLimit) {
+        this.seed = seed;
+        this.latencyMs = latencyMs;
+        this.errorRate = errorRate;
+        this.rowLimit = rowLimit;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void advance() {
+        generation++;
+    }
+
+    @Override
+    public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+        long gen = generation;
+        long request = mix(seed ^ mix(gen) ^ (to > from ? symbols[from].hashCode() : 0) * 31L + (to - from));
+        if (latencyMs > 0) {
+            long latency = Math.min((long)(-Math.log(1 - unit(request)) * latencyMs), latencyMs * MAX_LATENCY_FACTOR);
+            try {
+                Thread.sleep(latency);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+        }
+        if (unit(mix(request)) < failureRate)
+            throw new IOException("Simulated failure");
+
+        int rows = to - from;
+        if (rowLimit > 0 && rows > rowLimit)
+            rows = rowLimit;
+        for (int i = 0; i < rows; i++) {
+            if (i == slots.size())
+                slots.add(new SymbolInfo());
+            SymbolInfo si = slots.get(i);
+            si.Symbol = symbols[from + i];
+
+            long h = mix(seed ^ mix(gen) ^ si.Symbol.hashCode());
+            si.Error = unit(h) < errorRate;
+            if (si.Error) {
+                si.Change = 0;
+                si.Percent = 0;
+                continue;
+            }
+
+            // A stable per symbol price (no generation) so change and percent agree across generations.
+            double price = 10 + unit(mix(seed ^ si.Symbol.hashCode())) * 490;
+            si.Percent = Math.round((unit(mix(h + 1)) * 2 - 1) * MAX_PERCENT * 100) / 100.0;
+            si.Change = Math.round(price * si.Percent) / 100.0;
+        }
+        return rows;
+    }
+
+    // The simulated latency is a sleep, the interrupt ends it.
+    @Override
+    public void abort(Thread thread) {
+    }
+
+    // count distinct made up symbols ("AAAA", "AAAB", ...) for load testing.
+    public static String[] syntheticSymbols(int count) {
+        String[] ret = new String[count];
+        for (int i = 0; i < count; i++) {
+            char[] c = new char[4];
+            int n = i;
+            for (int j = c.length - 1; j >= 0; j--) {
+                c[j] = (char)('A' + n % 26);
+                n /= 26;
+            }
+            ret[i] = new String(c);
+        }
+        return ret;
+    }
+
+    // 64 bit finalizer (splitmix64), turns nearby inputs into unrelated outputs.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Uniform in [0, 1).
+    private static double unit(long h) {
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,221 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Wraps a primary and a secondary provider. If the primary hasn't answered within hedgeAfterMs the same request is
+// also sent to the secondary and whichever succeeds first is used, so one slow endpoint doesn't set the tail latency.
+// A primary that fails outright fails over to the secondary. Only fails if both do. Attempts (and the rows they parse
+// into) are pooled per provider and the winner's fields are copied into the caller's rows, so steady state polling
+// allocates no SymbolInfo here either.
+public class HedgingQuoteProvider implements QuoteProvider {
+    private final QuoteProvider primary;
+    private final QuoteProvider secondary;
+    private final long hedgeAfterMs;
+    private final ExecutorService executor;
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong secondaryWins = new AtomicLong();
+
+    // Idle attempts for each provider, calls from different batches run at the same time and each take their own.
+    private final ConcurrentLinkedQueue<Attempt> primaryPool = new ConcurrentLinkedQueue<Attempt>();
+    private final ConcurrentLinkedQueue<Attempt> secondaryPool = new ConcurrentLinkedQueue<Attempt>();
+
+    // One attempt's result, in its own rows so a losing attempt can't write over the caller's slots. Both the task
+    // and the caller hold it, it goes back to its pool once both let go. (a task cancelled before it ran never does,
+    // and the attempt is left to the garbage collector)
+    private static class Attempt {
+        final QuoteProvider provider;
+        final ConcurrentLinkedQueue<Attempt> pool;
+        final List<SymbolInfo> slots = new ArrayList<SymbolInfo>(); // Kept across uses.
+        int rows;
+        private final AtomicInteger holders = new AtomicInteger();
+        private Thread thread; // Running the fetch, guarded by this.
+        private boolean cancelled;
+        Attempt(QuoteProvider provider, ConcurrentLinkedQueue<Attempt> pool) {
+            this.provider = provider;
+            this.pool = pool;
+        }
+
+        synchronized void reset() {
+            rows = 0;
+            cancelled = false;
+            holders.set(2);
+        }
+
+        void release() {
+            if (holders.decrementAndGet() == 0)
+                pool.offer(this);
+        }
+
+        synchronized boolean begin() {
+            if (cancelled)
+                return false;
+            thread = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void end() {
+            thread = null;
+        }
+
+        // Abort the fetch while it's still this attempt's, the pool thread moves on to other work afterwards.
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null)
+                provider.abort(thread);
+        }
+    }
+
+    public HedgingQuoteProvider(QuoteProvider primary, QuoteProvider secondary, long hedgeAfterMs) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.hedgeAfterMs = hedgeAfterMs;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HedgingQuoteProvider-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+        CompletionService<Attempt> cs = new ExecutorCompletionService<Attempt>(executor);
+        List<Future<Attempt>> futures = new ArrayList<Future<Attempt>>(2);
+        List<Attempt> attempts = new ArrayList<Attempt>(2);
+        futures.add(cs.submit(attemptTask(attempt(primary, primaryPool, attempts), symbols, from, to)));
+        int pending = 1;
+        IOException error = null;
+        try {
+            Future<Attempt> done = cs.poll(hedgeAfterMs, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                hedges.incrementAndGet();
+                futures.add(cs.submit(attemptTask(attempt(secondary, secondaryPool, attempts), symbols, from, to)));
+                pending++;
+            }
+
+            // First success wins, an error just means waiting on the other attempt. (if there is one)
+            while (true) {
+                if (done == null)
+                    done = cs.take();
+                pending--;
+                try {
+                    Attempt a = done.get();
+                    if (a.provider == secondary)
+                        secondaryWins.incrementAndGet();
+                    return moveTo(a, slots);
+                }
+                catch (ExecutionException e) {
+                    if (error == null)
+                        error = asIOException(e);
+                }
+                done = null;
+
+                if (futures.size() == 1) {
+                    failovers.incrementAndGet();
+                    futures.add(cs.submit(attemptTask(attempt(secondary, secondaryPool, attempts), symbols, from, to)));
+                    pending++;
+                }
+                else if (pending == 0)
+                    throw error;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        }
+        finally {
+            // The loser's result is of no use, don't keep it running. A blocked socket read ignores the interrupt, so
+            // abort the request itself too.
+            for (Attempt a : attempts)
+                a.cancel();
+            for (Future<Attempt> f : futures)
+                f.cancel(true);
+            for (Attempt a : attempts)
+                a.release();
+        }
+    }
+
+    // fetchQuotes waits interruptibly, the attempts are aborted on the way out.
+    @Override
+    public void abort(Thread thread) {
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Requests that were also sent to the secondary because the primary was slow.
+    public long getHedges() { return hedges.get(); }
+    // Requests sent to the secondary because the primary failed.
+    public long getFailovers() { return failovers.get(); }
+    public long getSecondaryWins() { return secondaryWins.get(); }
+
+    private static Attempt attempt(QuoteProvider provider, ConcurrentLinkedQueue<Attempt> pool, List<Attempt> attempts) {
+        Attempt a = pool.poll();
+        if (a == null)
+            a = new Attempt(provider, pool);
+        a.reset();
+        attempts.add(a);
+        return a;
+    }
+
+    private static Callable<Attempt> attemptTask(final Attempt a, final String[] symbols, final int from, final int to) {
+        return new Callable<Attempt>() {
+            @Override
+            public Attempt call() throws Exception {
+                if (!a.begin())
+                    throw new InterruptedIOException("Cancelled");
+                try {
+                    a.rows = a.provider.fetchQuotes(symbols, from, to, a.slots);
+                }
+                finally {
+                    a.end();
+                    a.release(); // The caller still holds it, the rows stay put until it's done copying.
+                }
+                return a;
+            }
+        };
+    }
+
+    // Copy the winning attempt's rows into the caller's slots, reusing the entries already there.
+    private static int moveTo(Attempt a, List<SymbolInfo> slots) {
+        for (int i = 0; i < a.rows; i++) {
+            if (i == slots.size())
+                slots.add(new SymbolInfo());
+            SymbolInfo from = a.slots.get(i);
+            SymbolInfo to = slots.get(i);
+            to.Symbol = from.Symbol;
+            to.Change = from.Change;
+            to.Percent = from.Percent;
+            to.Error = from.Error;
+        }
+        return a.rows;
+    }
+
+    private static IOException asIOException(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IOException)
+            return (IOException)cause;
+        return new IOException(cause.toString());
+    }
+}
@@ -0,0 +1,184 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Process wide counters and latency histograms for the update path, off unless the debug setting enables them.
+// Disabled, a counter or timer costs one volatile read. Timers keep log2 buckets of microseconds, so percentiles
+// in the dump are rounded up to a power of two. Thread-safe.
+public final class Metrics {
+    private static final List<Counter> counters = new ArrayList<Counter>();
+    private static final List<Timer> timers = new ArrayList<Timer>();
+    private static volatile boolean enabled = false;
+
+    public static final Timer CONNECT = timer("connect"); // DNS lookup and TCP connect, new sockets only.
+    public static final Timer DOWNLOAD = timer("download"); // Request sent until the body is read.
+    public static final Timer PARSE = timer("parse");
+    public static final Timer FETCH = timer("fetch"); // Whole fetch, all batches.
+    public static final Timer SORT = timer("sort");
+    public static final Timer RENDER = timer("render");
+    public static final Timer PUBLISH = timer("publish"); // publishUpdate()
+
+    public static final Counter ROWS_PARSED = counter("rows_parsed");
+    public static final Counter ERROR_SYMBOLS = counter("error_symbols");
+    public static final Counter FETCH_FAILURES = counter("fetch_failures");
+    public static final Counter SKIPPED_POLLS = counter("skipped_polls"); // Updates stopped by the poll schedule.
+    public static final Counter EXCEPTIONS = counter("exceptions");
+    public static final Counter PARSES_SKIPPED = counter("parses_skipped"); // Responses identical to the last one for their url, 304s included.
+    public static final Counter RENDERS_SKIPPED = counter("renders_skipped"); // Nothing the render depends on changed.
+    public static final Counter PUBLISHES_SKIPPED = counter("publishes_skipped"); // Rendered the same as what dashclock already shows.
+
+    private Metrics() {
+    }
+
+    public static class Counter {
+        final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (enabled)
+                value.incrementAndGet();
+        }
+
+        public void add(long n) {
+            if (enabled)
+                value.addAndGet(n);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public static class Timer {
+        private static final int BUCKETS = 32; // Bucket i holds durations below 2^i microseconds.
+
+        final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        // Start time for stop(), 0 if disabled.
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        public void stop(long start) {
+            if (start != 0)
+                record((System.nanoTime() - start) / 1000);
+        }
+
+        public void record(long micros) {
+            if (!enabled)
+                return;
+            micros = Math.max(0, micros);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            long max;
+            while ((max = maxMicros.get()) < micros && !maxMicros.compareAndSet(max, micros))
+                ;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        // Upper bound (microseconds) of the bucket holding the given fraction of samples.
+        public long percentile(double fraction) {
+            long n = count.get();
+            if (n == 0)
+                return 0;
+            long target = (long)Math.ceil(n * fraction), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target)
+                    return i == 0 ? 0 : 1L << i;
+            }
+            return maxMicros.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets.set(i, 0);
+            count.set(0);
+            totalMicros.set(0);
+            maxMicros.set(0);
+        }
+    }
+
+    private static Counter counter(String name) {
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+
+    private static Timer timer(String name) {
+        Timer t = new Timer(name);
+        timers.add(t);
+        return t;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Turning metrics off also clears them, so a dump always covers one uninterrupted debugging session.
+    public static void setEnabled(boolean on) {
+        if (on == enabled)
+            return;
+        enabled = on;
+        if (!on)
+            reset();
+    }
+
+    public static void reset() {
+        for (Counter c : counters)
+            c.value.set(0);
+        for (Timer t : timers)
+            t.reset();
+    }
+
+    // Everything as a JSON object, gauges are point in time values kept elsewhere. (ie. cache hits)
+    public static String toJson(long now, Map<String, Long> gauges) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"time\":").append(now).append(",\"counters\":{");
+        for (int i = 0; i < counters.size(); i++) {
+            Counter c = counters.get(i);
+            sb.append(i > 0 ? "," : "").append('"').append(c.name).append("\":").append(c.get());
+        }
+        sb.append("},\"gauges\":{");
+        int i = 0;
+        for (Map.Entry<String, Long> e : gauges.entrySet())
+            sb.append(i++ > 0 ? "," : "").append('"').append(e.getKey()).append("\":").append(e.getValue());
+        sb.append("},\"timers\":{");
+        for (i = 0; i < timers.size(); i++) {
+            Timer t = timers.get(i);
+            sb.append(i > 0 ? "," : "").append('"').append(t.name).append("\":{")
+                    .append("\"count\":").append(t.count.get())
+                    .append(",\"total_us\":").append(t.totalMicros.get())
+                    .append(",\"max_us\":").append(t.maxMicros.get())
+                    .append(",\"p50_us\":").append(t.percentile(0.5))
+                    .append(",\"p90_us\":").append(t.percentile(0.9))
+                    .append(",\"p99_us\":").append(t.percentile(0.99))
+                    .append(",\"buckets\":[");
+            for (int b = 0; b < Timer.BUCKETS; b++)
+                sb.append(b > 0 ? "," : "").append(t.buckets.get(b));
+            sb.append("]}");
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+// NYSE/NASDAQ sessions: 9:30-16:00 America/New_York (tz database, so DST is handled), 4:00-20:00 with pre/post-market.
+// Holidays and 13:00 early closes follow the exchange's published rules, computed per year rather than listed.
+public class NyseCalendar implements ExchangeCalendar {
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+    private static final int PRE_MARKET_OPEN = 4 * 60;
+    private static final int OPEN = 9 * 60 + 30;
+    private static final int CLOSE = 16 * 60;
+    private static final int EARLY_CLOSE = 13 * 60;
+    private static final int POST_MARKET_CLOSE = 20 * 60;
+    private static final int EARLY_POST_MARKET_CLOSE = 17 * 60;
+    private static final int JUNETEENTH_FIRST_YEAR = 2022;
+
+    // Closed and early close dates per year, encoded as yyyymmdd (month 1-12).
+    private final HashMap<Integer, Set<Integer>> holidays = new HashMap<Integer, Set<Integer>>();
+    private final HashMap<Integer, Set<Integer>> earlyCloses = new HashMap<Integer, Set<Integer>>();
+
+    @Override
+    public TimeZone getTimeZone() {
+        return ZONE;
+    }
+
+    @Override
+    public int getOpenMinute(int year, int month, int day, boolean extendedHours) {
+        if (!isTradingDay(year, month, day))
+            return -1;
+        return extendedHours ? PRE_MARKET_OPEN : OPEN;
+    }
+
+    @Override
+    public int getCloseMinute(int year, int month, int day, boolean extendedHours) {
+        if (!isTradingDay(year, month, day))
+            return -1;
+        boolean early = isEarlyClose(year, month, day);
+        if (extendedHours)
+            return early ? EARLY_POST_MARKET_CLOSE : POST_MARKET_CLOSE;
+        return early ? EARLY_CLOSE : CLOSE;
+    }
+
+    public boolean isTradingDay(int year, int month, int day) {
+        int dow = dayOfWeek(year, month, day);
+        return dow != Calendar.SATURDAY && dow != Calendar.SUNDAY && !isHoliday(year, month, day);
+    }
+
+    public synchronized boolean isHoliday(int year, int month, int day) {
+        Set<Integer> dates = holidays.get(year);
+        if (dates == null) {
+            dates = computeHolidays(year);
+            holidays.put(year, dates);
+        }
+        return dates.contains(encode(year, month, day));
+    }
+
+    public synchronized boolean isEarlyClose(int year, int month, int day) {
+        Set<Integer> dates = earlyCloses.get(year);
+        if (dates == null) {
+            dates = computeEarlyCloses(year);
+            earlyCloses.put(year, dates);
+        }
+        return dates.contains(encode(year, month, day));
+    }
+
+    private static Set<Integer> computeHolidays(int year) {
+        Set<Integer> ret = new HashSet<Integer>();
+
+        // New Year's Day, a Saturday holiday is not moved back into the previous year.
+        int dow = dayOfWeek(year, Calendar.JANUARY, 1);
+        if (dow == Calendar.SUNDAY)
+            ret.add(encode(year, Calendar.JANUARY, 2));
+        else if (dow != Calendar.SATURDAY)
+            ret.add(encode(year, Calendar.JANUARY, 1));
+
+        ret.add(nthWeekday(year, Calendar.JANUARY, Calendar.MONDAY, 3)); // Martin Luther King Jr. Day
+        ret.add(nthWeekday(year, Calendar.FEBRUARY, Calendar.MONDAY, 3)); // Washington's Birthday
+        ret.add(goodFriday(year));
+        ret.add(lastWeekday(year, Calendar.MAY, Calendar.MONDAY)); // Memorial Day
+        if (year >= JUNETEENTH_FIRST_YEAR)
+            ret.add(observed(year, Calendar.JUNE, 19));
+        ret.add(observed(year, Calendar.JULY, 4)); // Independence Day
+        ret.add(nthWeekday(year, Calendar.SEPTEMBER, Calendar.MONDAY, 1)); // Labor Day
+        ret.add(nthWeekday(year, Calendar.NOVEMBER, Calendar.THURSDAY, 4)); // Thanksgiving
+        ret.add(observed(year, Calendar.DECEMBER, 25)); // Christmas
+        return ret;
+    }
+
+    private static Set<Integer> computeEarlyCloses(int year) {
+        Set<Integer> ret = new HashSet<Integer>();
+
+        // July 3rd and Christmas Eve close early only when they fall Monday-Thursday. (Friday is the observed holiday)
+        int dow = dayOfWeek(year, Calendar.JULY, 3);
+        if (dow >= Calendar.MONDAY && dow <= Calendar.THURSDAY)
+            ret.add(encode(year, Calendar.JULY, 3));
+        dow = dayOfWeek(year, Calendar.DECEMBER, 24);
+        if (dow >= Calendar.MONDAY && dow <= Calendar.THURSDAY)
+            ret.add(encode(year, Calendar.DECEMBER, 24));
+
+        // Day after Thanksgiving.
+        int thanksgiving = nthWeekday(year, Calendar.NOVEMBER, Calendar.THURSDAY, 4);
+        ret.add(thanksgiving + 1);
+        return ret;
+    }
+
+    // Saturday holidays are observed on Friday, Sunday holidays on Monday.
+    private static int observed(int year, int month, int day) {
+        GregorianCalendar cal = new GregorianCalendar(year, month, day);
+        int dow = cal.get(Calendar.DAY_OF_WEEK);
+        if (dow == Calendar.SATURDAY)
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+        else if (dow == Calendar.SUNDAY)
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        return encode(cal);
+    }
+
+    private static int nthWeekday(int year, int month, int weekday, int n) {
+        GregorianCalendar cal = new GregorianCalendar(year, month, 1);
+        int offset = (weekday - cal.get(Calendar.DAY_OF_WEEK) + 7) % 7;
+        cal.add(Calendar.DAY_OF_MONTH, offset + (n - 1) * 7);
+        return encode(cal);
+    }
+
+    private static int lastWeekday(int year, int month, int weekday) {
+        GregorianCalendar cal = new GregorianCalendar(year, month, 1);
+        cal.set(Calendar.DAY_OF_MONTH, cal.getActualMaximum(Calendar.DAY_OF_MONTH));
+        int offset = (cal.get(Calendar.DAY_OF_WEEK) - weekday + 7) % 7;
+        cal.add(Calendar.DAY_OF_MONTH, -offset);
+        return encode(cal);
+    }
+
+    // Two days before Easter Sunday. (anonymous Gregorian algorithm)
+    private static int goodFriday(int year) {
+        int a = year % 19, b = year / 100, c = year % 100;
+        int d = b / 4, e = b % 4, f = (b + 8) / 25, g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4, k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31; // 3 = March, 4 = April
+        int day = ((h + l - 7 * m + 114) % 31) + 1;
+        GregorianCalendar cal = new GregorianCalendar(year, month - 1, day);
+        cal.add(Calendar.DAY_OF_MONTH, -2);
+        return encode(cal);
+    }
+
+    private static int dayOfWeek(int year, int month, int day) {
+        return new GregorianCalendar(year, month, day).get(Calendar.DAY_OF_WEEK);
+    }
+
+    private static int encode(int year, int month, int day) {
+        return year * 10000 + (month + 1) * 100 + day;
+    }
+
+    private static int encode(Calendar cal) {
+        return encode(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -0,0 +1,69 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+// Decides when the next fetch is worth making: not until the next session opens when the exchange is closed, and
+// progressively less often while open if quotes stop changing (halts, quiet lists). Times are epoch milliseconds.
+public class PollScheduler {
+    public static final long MIN_BACKOFF_MS = 5 * 60 * 1000L;
+    public static final long MAX_BACKOFF_MS = 60 * 60 * 1000L;
+    public static final int CLOSE_GRACE_MINUTES = 15; // Keep polling a little past the bell for settled closing values.
+    private static final int MAX_DAYS_AHEAD = 14; // Longer than any run of exchange holidays.
+    private static final long FALLBACK_MS = 24 * 60 * 60 * 1000L;
+
+    private final ExchangeCalendar calendar;
+    private int unchangedPolls = 0;
+
+    public PollScheduler(ExchangeCalendar calendar) {
+        this.calendar = calendar;
+    }
+
+    public ExchangeCalendar getCalendar() {
+        return calendar;
+    }
+
+    // Call after each fetch, changed = whether any quote differed from the previous fetch.
+    // Returns the earliest time to fetch again, a value <= now means poll at dashclock's own pace.
+    public long nextPoll(long now, boolean extendedHours, boolean changed) {
+        GregorianCalendar cal = new GregorianCalendar(calendar.getTimeZone());
+        cal.setTimeInMillis(now);
+        int year = cal.get(Calendar.YEAR), month = cal.get(Calendar.MONTH), day = cal.get(Calendar.DAY_OF_MONTH);
+        int minute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        int open = calendar.getOpenMinute(year, month, day, extendedHours);
+        int close = calendar.getCloseMinute(year, month, day, extendedHours);
+
+        // In session, back off exponentially while nothing changes, never past the end of the session.
+        if (open >= 0 && minute >= open && minute < close + CLOSE_GRACE_MINUTES) {
+            if (changed) {
+                unchangedPolls = 0;
+                return now;
+            }
+            unchangedPolls++;
+            long backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(unchangedPolls - 1, 10));
+            return Math.min(now + backoff, timeAt(cal, close + CLOSE_GRACE_MINUTES));
+        }
+
+        // Closed, sleep until the next session opens.
+        unchangedPolls = 0;
+        if (open >= 0 && minute < open)
+            return timeAt(cal, open);
+        for (int i = 0; i < MAX_DAYS_AHEAD; i++) {
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            open = calendar.getOpenMinute(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH), extendedHours);
+            if (open >= 0)
+                return timeAt(cal, open);
+        }
+        return now + FALLBACK_MS;
+    }
+
+    // Wall clock minute of cal's day in the exchange zone, resolved through the zone so DST days come out right.
+    private static long timeAt(Calendar cal, int minuteOfDay) {
+        Calendar c = (Calendar)cal.clone();
+        c.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        c.set(Calendar.MINUTE, minuteOfDay % 60);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+}
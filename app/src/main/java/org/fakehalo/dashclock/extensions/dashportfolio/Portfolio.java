@@ -0,0 +1,75 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A named watchlist: its symbols (title included), title symbol, ordering and display mode. Extra portfolios come one
+// per line of a preference, ie. "Sector watch: XLE, XLF, XLK; title=SPY; order=percent; mode=trend", options left out
+// are taken from the main portfolio. Immutable.
+public class Portfolio {
+    public final String name;
+    public final String title;
+    public final String[] symbols; // Sorted and unique, shared with the normalizer's cache so don't modify it.
+    public final String order;
+    public final String mode;
+
+    public Portfolio(String name, String title, String[] symbols, String order, String mode) {
+        this.name = name;
+        this.title = title;
+        this.symbols = symbols;
+        this.order = order;
+        this.mode = mode;
+    }
+
+    // The main portfolio followed by one per non-blank line of portfoliosPref, unnamed lines are numbered.
+    public static List<Portfolio> parseAll(String portfoliosPref, Portfolio main, SymbolSetNormalizer normalizer) {
+        List<Portfolio> ret = new ArrayList<Portfolio>();
+        ret.add(main);
+        if (portfoliosPref == null)
+            return ret;
+        for (String line : portfoliosPref.split("[\r\n]+")) {
+            if (line.trim().isEmpty())
+                continue;
+            String name = String.valueOf(ret.size() + 1);
+            int colon = line.indexOf(':');
+            if (colon >= 0) {
+                if (!line.substring(0, colon).trim().isEmpty())
+                    name = line.substring(0, colon).trim();
+                line = line.substring(colon + 1);
+            }
+
+            // First part is the symbols, the rest are key=value options.
+            String[] parts = line.split(";");
+            String title = main.title, order = main.order, mode = main.mode;
+            for (int i = 1; i < parts.length; i++) {
+                int eq = parts[i].indexOf('=');
+                if (eq < 0)
+                    continue;
+                String key = parts[i].substring(0, eq).trim().toLowerCase();
+                String value = parts[i].substring(eq + 1).trim();
+                if (value.isEmpty())
+                    continue;
+                if (key.equals("title"))
+                    title = value.toUpperCase();
+                else if (key.equals("order"))
+                    order = value.toLowerCase();
+                else if (key.equals("mode"))
+                    mode = value.toLowerCase();
+            }
+            ret.add(new Portfolio(name, title, normalizer.normalize(title + "," + parts[0], 0), order, mode));
+        }
+        return ret;
+    }
+
+    // Every symbol of every portfolio once, sorted. Overlapping portfolios cost nothing extra to fetch.
+    public static String[] union(List<Portfolio> portfolios, SymbolSetNormalizer normalizer) {
+        if (portfolios.size() == 1)
+            return portfolios.get(0).symbols;
+        StringBuilder sb = new StringBuilder();
+        for (Portfolio p : portfolios) {
+            for (String sym : p.symbols)
+                sb.append(sym).append(',');
+        }
+        return normalizer.normalize(sb.toString(), 0);
+    }
+}
@@ -0,0 +1,184 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ^MYINDEX over the portfolio's symbols. Keeps running sums so a changed quote updates the index in O(1) instead of a
+// pass over every symbol. Without holdings it's the plain average of the symbols. With holdings it's the return on the
+// held positions, weighted by value at the previous close (derived from the feed as change * 100 / percent), and
+// symbols without a configured quantity are left out. A holding whose close isn't known yet (it hasn't moved enough to
+// tell) counts towards the P&L but not the percent, until no close is known at all and the percent falls back to the
+// quantity weighted average. Not thread-safe.
+public class PortfolioAggregator {
+    private static final Pattern HOLDING_PATTERN = Pattern.compile("([A-Za-z0-9.^-]+)\\s*[=:]\\s*([0-9]*\\.?[0-9]+)");
+    private static final int RESYNC_INTERVAL = 1024; // Updates between full recomputes, bounds floating point drift.
+    private static final double MIN_CLOSE_PERCENT = 0.1; // Smaller moves are too coarsely rounded to recover the previous close.
+
+    private final HashMap<String, Holding> holdings = new HashMap<String, Holding>();
+    private String configKey = null;
+    private boolean weighted = false;
+
+    // Running sums over valid (non-error) symbols only, the previous close and the change matching it only over those
+    // where the close is known.
+    private double sumWeight, sumWeightedChange, sumWeightedPercent, sumWeightedClose, sumClosedChange;
+    private int validCount, errorCount;
+    private int updatesSinceResync;
+
+    private static class Holding {
+        double weight; // Share count, or 1 without holdings.
+        boolean present; // Has a quote been seen.
+        boolean error;
+        double change, percent;
+        double previousClose = Double.NaN; // Price at the previous close, NaN until a quote has moved enough to tell.
+    }
+
+    // (Re)define the symbols that make up the index along with "SYM=qty" holdings, a no-op if nothing changed. With any
+    // holdings only the held symbols make up the index. Returns true if the index was reset and needs quotes fed back in.
+    public boolean configure(String[] symbols, String holdingsPref) {
+        StringBuilder sb = new StringBuilder();
+        for (String sym : symbols)
+            sb.append(sym).append(',');
+        sb.append('|').append(holdingsPref);
+        String key = sb.toString();
+        if (key.equals(configKey))
+            return false;
+        configKey = key;
+
+        Map<String, Double> weights = parseHoldings(holdingsPref);
+        weighted = !weights.isEmpty();
+        holdings.clear();
+        for (String sym : symbols) {
+            Double w = weights.get(sym);
+            if (weighted && w == null)
+                continue;
+            Holding h = new Holding();
+            h.weight = w != null ? w : 1;
+            holdings.put(sym, h);
+        }
+        resync();
+        return true;
+    }
+
+    // Forget every quote, the next configure() starts over even if nothing changed.
+    public void reset() {
+        configKey = null;
+        holdings.clear();
+        resync();
+    }
+
+    // Parse "AAPL=10, GOOG:2.5" into symbol -> quantity, anything unparseable is ignored.
+    public static Map<String, Double> parseHoldings(String holdingsPref) {
+        Map<String, Double> ret = new HashMap<String, Double>();
+        if (holdingsPref == null)
+            return ret;
+        Matcher m = HOLDING_PATTERN.matcher(holdingsPref);
+        while (m.find()) {
+            try {
+                ret.put(m.group(1).toUpperCase(), Double.parseDouble(m.group(2)));
+            }
+            catch (NumberFormatException e) {
+                // Skip it, the pattern should make this impossible anyway.
+            }
+        }
+        return ret;
+    }
+
+    // Apply a new quote for one symbol, symbols outside the index are ignored.
+    public void update(SymbolInfo si) {
+        Holding h = holdings.get(si.Symbol);
+        if (h == null)
+            return;
+        remove(h);
+        h.present = true;
+        h.error = si.Error;
+        h.change = si.Change;
+        h.percent = si.Percent;
+        if (!si.Error && Math.abs(si.Percent) >= MIN_CLOSE_PERCENT) {
+            double close = si.Change * 100 / si.Percent;
+            if (close > 0 && !Double.isInfinite(close))
+                h.previousClose = close;
+        }
+        add(h);
+
+        if (++updatesSinceResync >= RESYNC_INTERVAL)
+            resync();
+    }
+
+    private void add(Holding h) {
+        if (!h.present)
+            return;
+        if (h.error) {
+            errorCount++;
+            return;
+        }
+        validCount++;
+        sumWeight += h.weight;
+        sumWeightedChange += h.weight * h.change;
+        sumWeightedPercent += h.weight * h.percent;
+        if (!Double.isNaN(h.previousClose)) {
+            sumWeightedClose += h.weight * h.previousClose;
+            sumClosedChange += h.weight * h.change;
+        }
+    }
+
+    private void remove(Holding h) {
+        if (!h.present)
+            return;
+        if (h.error) {
+            errorCount--;
+            return;
+        }
+        validCount--;
+        sumWeight -= h.weight;
+        sumWeightedChange -= h.weight * h.change;
+        sumWeightedPercent -= h.weight * h.percent;
+        if (!Double.isNaN(h.previousClose)) {
+            sumWeightedClose -= h.weight * h.previousClose;
+            sumClosedChange -= h.weight * h.change;
+        }
+    }
+
+    // Recompute the sums from scratch.
+    private void resync() {
+        sumWeight = sumWeightedChange = sumWeightedPercent = sumWeightedClose = sumClosedChange = 0;
+        validCount = errorCount = 0;
+        updatesSinceResync = 0;
+        for (Holding h : holdings.values())
+            add(h);
+    }
+
+    // True if any holdings were configured, otherwise every symbol weighs 1.
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    public int getValidCount() {
+        return validCount;
+    }
+
+    // Symbols left out of the index because their quote errored.
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    // Percent change, average of the symbols or with holdings the return on their value at the previous close.
+    public double getPercent() {
+        if (weighted && sumWeightedClose > 0)
+            return sumClosedChange * 100 / sumWeightedClose;
+        return sumWeight != 0 ? sumWeightedPercent / sumWeight : 0;
+    }
+
+    // Price change, average of the symbols or with holdings the change in their value. (same as getProfitLoss())
+    public double getChange() {
+        if (weighted)
+            return sumWeightedChange;
+        return sumWeight != 0 ? sumWeightedChange / sumWeight : 0;
+    }
+
+    // Absolute P&L for the day, quantity * price change summed over the holdings.
+    public double getProfitLoss() {
+        return weighted ? sumWeightedChange : 0;
+    }
+}
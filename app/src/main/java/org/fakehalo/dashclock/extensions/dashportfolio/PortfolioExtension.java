@@ -5,55 +5,91 @@ import com.google.android.apps.dashclock.api.ExtensionData;
 
 import android.util.Log;
 
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
 import android.content.Intent;
-import android.text.TextUtils;
-import android.text.format.DateFormat;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URLEncoder;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
+import java.util.Locale;
+import java.util.Map;
 
 public class PortfolioExtension extends DashClockExtension {
     private static final String TAG = "PortfolioExtension";
     private static final String FINANCE_URL = "http://download.finance.yahoo.com/d/quotes.csv?f=sc6p2&s=";
+    private static final String FINANCE_BACKUP_URL = "http://finance.yahoo.com/d/quotes.csv?f=sc6p2&s="; // Same feed, different front end.
+    private static final long HEDGE_AFTER_MS = 2000; // Ask the backup too if the main feed hasn't answered by then.
+    private static final String SNAPSHOT_FILE = "quotes.snapshot"; // Last fetch, in the app's private files dir.
+    private static final String METRICS_FILE = "metrics.json"; // Debug dump, in the app's external files dir (readable over adb) if there is one.
     public static final String CUSTOM_INDEX = "^MYINDEX"; // Pseudo-symbol to use for the portfolio average index.
-    public static final int DEFAULT_TIMEZONE_OFFSET = -18000; // In seconds. (-18000 = EST)
-    public static final int START_POLLING_HOUR = 8; // 8AM EST (24hr fmt, broadly account for EDT/EST difference)
-    public static final int STOP_POLLING_HOUR = 17; // 5PM EST (24hr fmt, broadly account for EDT/EST difference)
     public static final String PREF_PORTFOLIO_SYM_TITLE = "pref_sym_title";
     public static final String PREF_PORTFOLIO_SYMS = "pref_syms";
     public static final String PREF_PORTFOLIO_SYMS_ORDER = "pref_sym_order";
+    public static final String PREF_PORTFOLIO_SYMS_LIMIT = "pref_sym_limit";
     public static final String PREF_PORTFOLIO_CLICK = "pref_click";
     public static final String PREF_PORTFOLIO_CLICK_REVERSE = "pref_click_reverse";
     public static final String PREF_PORTFOLIO_SHOW_PRICE = "pref_show_price";
     public static final String PREF_PORTFOLIO_HIDE_ON_WEEKENDS = "pref_hide_on_weekends";
-
-    private long nextEpoch = 0; // next time to check / update symbols.
+    public static final String PREF_PORTFOLIO_CACHE_TTL = "pref_cache_ttl";
+    public static final String PREF_PORTFOLIO_EXTENDED_HOURS = "pref_extended_hours";
+    public static final String PREF_PORTFOLIO_HOLDINGS = "pref_holdings";
+    public static final String PREF_PORTFOLIO_QUOTE_SOURCE = "pref_quote_source";
+    public static final String PREF_PORTFOLIO_DISPLAY_MODE = "pref_display_mode";
+    public static final String PREF_PORTFOLIO_ALERTS = "pref_alerts";
+    public static final String PREF_PORTFOLIO_DEBUG_METRICS = "pref_debug_metrics";
+    public static final String PREF_PORTFOLIO_PORTFOLIOS = "pref_portfolios";
+    public static final String PREF_PORTFOLIO_CLICK_CYCLE = "pref_click_cycle";
+    private static final int NOTIFICATION_ID_ALERTS = 1;
+    public static final String QUOTE_SOURCE_YAHOO = "yahoo";
+    public static final String QUOTE_SOURCE_DEMO = "demo"; // Made up quotes, no network.
+    public static final int DEFAULT_CACHE_TTL = 60; // In seconds, how long a fetched quote is reused before requesting it again.
+    public static final int BODY_CHAR_BUDGET = 1000; // Expanded body characters worth rendering, dashclock cuts it off well before this.
+
+    private static final SymbolSetNormalizer symbolNormalizer = new SymbolSetNormalizer(CUSTOM_INDEX); // Exempt "^MYINDEX" from all symbol lists, it doesn't exist.
+
+    private final Object stateLock = new Object(); // Guards everything below that isn't thread-safe itself, updates publish from both the callback and the worker.
+    private long nextEpoch = 0; // next time to check / update symbols. (epoch milliseconds)
     private boolean reverseMode = false; // next time to check / update symbols.
+    private long quotesVersion = 0; // Bumped whenever cached quotes or the ^MYINDEX totals change.
+    private String lastRenderKey = null; // Everything the last render depended on, null = render next time regardless.
+    private String[] lastRenderSymbols = null;
+    private String lastFingerprint = null; // Content of the last published ExtensionData.
+    private int activePortfolio = 0; // Index of the portfolio on display, clicks cycle through them with PREF_PORTFOLIO_CLICK_CYCLE.
+    private final UpdateCoordinator updateCoordinator = new UpdateCoordinator(); // Runs the network side of updates, one at a time.
+    private final QuoteTransport quoteTransport = new QuoteTransport(); // Shared for the life of the extension, keeps connections alive.
+    private final HedgingQuoteProvider yahooProvider = new HedgingQuoteProvider(new CsvQuoteProvider(FINANCE_URL, quoteTransport), new CsvQuoteProvider(FINANCE_BACKUP_URL, quoteTransport), HEDGE_AFTER_MS);
+    private final FakeQuoteProvider demoProvider = new FakeQuoteProvider(System.currentTimeMillis(), 200, 0.02, 0);
+    private final QuoteBatchFetcher quoteFetcher = new QuoteBatchFetcher();
+    private String quoteSource = null; // Source the cached quotes came from.
+    private final QuoteCache quoteCache = new QuoteCache(); // Last known quotes, survives between onUpdateData calls.
+    private final PortfolioAggregator aggregator = new PortfolioAggregator(); // Running ^MYINDEX totals.
+    private final SymbolOrdering symbolOrdering = new SymbolOrdering();
+    private final BodyRenderer bodyRenderer = new BodyRenderer();
+    private final PollScheduler pollScheduler = new PollScheduler(new NyseCalendar());
+    private final AlertEngine alertEngine = new AlertEngine(); // Compiled from PREF_PORTFOLIO_ALERTS.
+    private final QuoteHistory quoteHistory = new QuoteHistory(pollScheduler.getCalendar().getTimeZone()); // Today's samples per symbol, for the trend display modes.
+    private QuoteSnapshotStore snapshotStore = null; // Created (and read) lazily on the first update, needs a context.
 
-    public static class SymbolInfo {
-        public String Symbol;
-        public double Change;
-        public double Percent;
-        public boolean Error;
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        updateCoordinator.shutdown();
+        quoteFetcher.shutdown();
+        yahooProvider.shutdown();
+        quoteTransport.shutdown();
     }
 
     // Called by dashclock to update.
@@ -65,143 +101,377 @@ public class PortfolioExtension extends DashClockExtension {
         String symTitle = sp.getString(PREF_PORTFOLIO_SYM_TITLE, null);
         String syms = sp.getString(PREF_PORTFOLIO_SYMS, null);
         String symOrder = sp.getString(PREF_PORTFOLIO_SYMS_ORDER, null);
+        final int symLimit = parseInt(sp.getString(PREF_PORTFOLIO_SYMS_LIMIT, null), 0);
         String clickURL = sp.getString(PREF_PORTFOLIO_CLICK, null);
         boolean clickReverse = sp.getBoolean(PREF_PORTFOLIO_CLICK_REVERSE, false);
+        boolean clickCycle = sp.getBoolean(PREF_PORTFOLIO_CLICK_CYCLE, false);
         boolean hideOnWeekends = sp.getBoolean(PREF_PORTFOLIO_HIDE_ON_WEEKENDS, false);
-        boolean showPrice = sp.getBoolean(PREF_PORTFOLIO_SHOW_PRICE, false);
-
-        // isWeekendDay is used after publishUpdate below as well.
-        boolean isWeekendDay = false;
-        try {
-            String today = DateFormat.format("EEEE", new Date()).toString();
-            isWeekendDay = (today.equals("Saturday") || today.equals("Sunday"));
-        }
-        catch (Exception e) {
-            debugPrint(TAG, e.getMessage()); // not worth erroring out if this fails, just a dead option.
-        }
-
-        // Hide if we're in the weekend and the option is enabled.
-        if (hideOnWeekends && isWeekendDay) {
-            publishUpdate(new ExtensionData().visible(false));
+        final boolean showPrice = sp.getBoolean(PREF_PORTFOLIO_SHOW_PRICE, false);
+        String displayMode = sp.getString(PREF_PORTFOLIO_DISPLAY_MODE, BodyRenderer.MODE_QUOTE);
+        String portfoliosPref = sp.getString(PREF_PORTFOLIO_PORTFOLIOS, null);
+        final boolean extendedHours = sp.getBoolean(PREF_PORTFOLIO_EXTENDED_HOURS, false);
+        String holdings = sp.getString(PREF_PORTFOLIO_HOLDINGS, null);
+        int cacheTtl = parseInt(sp.getString(PREF_PORTFOLIO_CACHE_TTL, null), DEFAULT_CACHE_TTL);
+        String source = sp.getString(PREF_PORTFOLIO_QUOTE_SOURCE, QUOTE_SOURCE_YAHOO);
+        String alerts = sp.getString(PREF_PORTFOLIO_ALERTS, null);
+        Metrics.setEnabled(sp.getBoolean(PREF_PORTFOLIO_DEBUG_METRICS, false));
+
+        // Hide if we're in the (local) weekend and the option is enabled.
+        int today = Calendar.getInstance().get(Calendar.DAY_OF_WEEK);
+        if (hideOnWeekends && (today == Calendar.SATURDAY || today == Calendar.SUNDAY)) {
+            updateCoordinator.cancel(); // Nothing in flight gets to make it visible again.
+            synchronized (stateLock) {
+                lastRenderKey = null; // Coming back needs a fresh render, whatever the quotes did.
+                publish(new ExtensionData().visible(false));
+            }
             return;
         }
 
-        // Force updates if manually activated or configurations change.
-        if(reason == UPDATE_REASON_MANUAL || reason == UPDATE_REASON_SETTINGS_CHANGED) {
-            nextEpoch = 0; // Forces the update.
+        // The main portfolio is the original single symbol list, any others are added from PREF_PORTFOLIO_PORTFOLIOS.
+        Portfolio main = new Portfolio(getString(R.string.portfolio_main_name), symTitle, normalizeSymbolArray(symTitle + "," + syms, 0), symOrder, displayMode);
+        List<Portfolio> portfolios = Portfolio.parseAll(portfoliosPref, main, symbolNormalizer);
 
-            // Always reset reverse mode on changed settings(reason != UPDATE_REASON_SETTINGS_CHANGED), otherwise inverse previous setting(!reverseMode)
-            // Unless not enabled(clickReverse), always force to false.
-            reverseMode = clickReverse && reason != UPDATE_REASON_SETTINGS_CHANGED && !reverseMode;
-        }
+        synchronized (stateLock) {
+            // Force updates if manually activated or configurations change. (fresh cached quotes still won't be requested again)
+            if(reason == UPDATE_REASON_MANUAL || reason == UPDATE_REASON_SETTINGS_CHANGED) {
+                nextEpoch = 0; // Forces the update.
 
-        // Get current time in the desired timezone (also used after publishUpdate below), compare to nextUpdate and stop now if updates aren't needed.
-        long currentEpoch = new Date().getTime() / 1000 + DEFAULT_TIMEZONE_OFFSET;
-        if(nextEpoch > currentEpoch)
-            return;
+                // Always reset reverse mode on changed settings(reason != UPDATE_REASON_SETTINGS_CHANGED), otherwise inverse previous setting(!reverseMode)
+                // Unless not enabled(clickReverse), always force to false. Cycling portfolios takes the click over from reversing.
+                reverseMode = clickReverse && !clickCycle && reason != UPDATE_REASON_SETTINGS_CHANGED && !reverseMode;
+                if(clickCycle && reason == UPDATE_REASON_MANUAL)
+                    activePortfolio++;
+            }
+            if(activePortfolio >= portfolios.size())
+                activePortfolio = 0;
+
+            // Dashclock (re)bound to us and may not hold anything we published before.
+            if(reason == UPDATE_REASON_INITIAL)
+                lastRenderKey = lastFingerprint = null;
+
+            // Compare to nextEpoch and stop now if updates aren't needed. (exchange closed or quotes not moving, see pollScheduler)
+            if(nextEpoch > System.currentTimeMillis()) {
+                Metrics.SKIPPED_POLLS.increment();
+                return;
+            }
+        }
 
-        // Test user-supplied URL for proper syntax, default if a problem. (clickReverse overrides URLs)
-        Uri uri = null;
-        if(!clickReverse) {
+        // Test user-supplied URL for proper syntax, default if a problem. (clickReverse and clickCycle override URLs)
+        Uri parsedUri = null;
+        if(!clickReverse && !clickCycle) {
             try {
                 if (clickURL != null && !clickURL.isEmpty())
-                    uri = Uri.parse(clickURL);
+                    parsedUri = Uri.parse(clickURL);
             } catch (Exception e) {
-                debugPrint(TAG, e.getMessage());
+                debugPrint(TAG, e);
             }
         }
+        final Uri uri = parsedUri;
 
         try {
-            // Create Extension data and fill in defacto defaults.
-            ExtensionData ed = new ExtensionData()
-                    .visible(true)
-                    .icon(R.drawable.ic_launcher)
-                    .status("[No Data]")
-                    .expandedTitle("[No data available]")
-                    .expandedBody("");
-
-            // Add uri if we have a valid one.
-            if(uri != null)
-                 ed.clickIntent(new Intent(Intent.ACTION_VIEW, uri));
+            // Request every portfolio's symbols in one go, whichever is on display. Nothing to do without any.
+            final String[] symbols = Portfolio.union(portfolios, symbolNormalizer);
+            if(symbols.length == 0)
+                return;
+            final boolean showName = portfolios.size() > 1;
+            quoteCache.setTtl(cacheTtl * 1000L);
+
+            final Portfolio portfolio;
+            boolean published = false;
+            synchronized (stateLock) {
+                portfolio = portfolios.get(activePortfolio);
+                boolean restored = loadSnapshot();
+
+                // Quotes from another source aren't comparable, start over. (the snapshot counts as whatever is configured)
+                if(quoteSource != null && !quoteSource.equals(source)) {
+                    quoteCache.clear();
+                    aggregator.reset();
+                    quoteHistory.clear();
+                    quotesVersion++;
+                }
+                quoteSource = source;
+                alertEngine.configure(alerts);
+                quoteHistory.setExtendedHours(extendedHours);
+
+                // Everything but the title symbol makes up ^MYINDEX, refeed it from the cache if the portfolio or holdings changed.
+                List<String> indexSymbols = new ArrayList<String>(Arrays.asList(portfolio.symbols));
+                indexSymbols.remove(portfolio.title);
+                String[] indexArray = indexSymbols.toArray(new String[indexSymbols.size()]);
+                if(aggregator.configure(indexArray, holdings)) {
+                    for (SymbolInfo si : quoteCache.get(indexArray))
+                        aggregator.update(si);
+                    quotesVersion++;
+                }
 
-            // Request both the main index and all symbols in one request, if fetchSymbols fails we don't want to publish anything.
-            if(fetchSymbols(ed, normalizeSymbols(symTitle + "," + syms, ",", 0), symOrder, symTitle, reverseMode, showPrice)) {
+                // Which alerts already went off didn't survive the restart, treat the restored quotes as seen so rules
+                // they're past don't fire again on the first fetch.
+                if(restored) {
+                    for (SymbolInfo si : quoteCache.get(symbols))
+                        alertEngine.seed(si);
+                    if(aggregator.getValidCount() > 0)
+                        alertEngine.seed(customIndexQuote());
+                }
 
-                // We have updated symbol goodies, publish update.
-                publishUpdate(ed);
+                // Stale-while-revalidate: on user driven updates (reverse toggles, portfolio switches, settings) show what we
+                // already have straight away, even if it's old, rather than waiting on the network.
+                if(reason == UPDATE_REASON_MANUAL || reason == UPDATE_REASON_SETTINGS_CHANGED || reason == UPDATE_REASON_INITIAL) {
+                    List<SymbolInfo> cached = quoteCache.get(portfolio.symbols);
+                    if(!cached.isEmpty())
+                        published = renderAndPublish(cached, uri, portfolio, showName, symLimit, showPrice);
+                }
+            }
 
-                // See if we should stop polling.
-                int currentDailySeconds = (int)(currentEpoch % 86400);
-                int currentDailyHours = currentDailySeconds / 3600; // Implicitly floors the hour.
+            // Reverse mode clicks only reorder what's already on display, and every portfolio was fetched together, no need for the network.
+            if(published && (clickReverse || clickCycle) && reason == UPDATE_REASON_MANUAL)
+                return;
 
-                // Stop polling? If weekend day OR current hour is before ??:00EST OR current hour is after ??:00EST, then prepare the next time we're allowed to poll.
-                if(isWeekendDay || currentDailyHours < START_POLLING_HOUR || STOP_POLLING_HOUR <= currentDailyHours) {
+            // Fetch in the background, replacing any update still waiting to run. (bursts of reasons become one fetch)
+            final QuoteProvider provider = QUOTE_SOURCE_DEMO.equals(source) ? demoProvider : yahooProvider;
+            updateCoordinator.request(new UpdateCoordinator.Task() {
+                @Override
+                public void run(long generation) {
+                    fetchAndPublish(generation, provider, uri, symbols, portfolio, showName, symLimit, showPrice, extendedHours);
+                }
+            });
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
+        }
+    }
+
+    // Worker side of an update: request what's stale out of symbols (all portfolios), then publish portfolio unless a newer
+    // update has superseded this one.
+    private void fetchAndPublish(long generation, QuoteProvider provider, Uri uri, String[] symbols, Portfolio portfolio, boolean showName, int symLimit, boolean showPrice, boolean extendedHours) {
+        try {
+            // Only request what's missing or expired, if fetchSymbols fails the cached data (if any) has already been published.
+            // Nothing stale means an earlier run of this burst already fetched, still publish in case that run was dropped.
+            long now = System.currentTimeMillis();
+            String[] stale = quoteCache.getStale(symbols, now);
+            int changed = 0;
+            if(stale.length > 0) {
+                changed = fetchSymbols(provider, stale, now, uri);
+                if(changed < 0)
+                    return;
+            }
 
-                    // Midnight of the current day + START_POLLING_HOUR
-                    nextEpoch = currentEpoch - currentDailySeconds + START_POLLING_HOUR * 3600;
+            boolean published = false;
+            synchronized (stateLock) {
+                // Work out when the next fetch is worth it, based on the exchange calendar and whether anything moved.
+                if(stale.length > 0)
+                    nextEpoch = pollScheduler.nextPoll(now, extendedHours, changed > 0);
 
-                    // We're still in the current day, add 86400 (a day) to go into tomorrow.
-                    if(STOP_POLLING_HOUR <= currentDailyHours)
-                        nextEpoch += 86400;
-                }
+                // We have updated symbol goodies (or the same ones, in which case nothing is rendered), publish update.
+                // Unless superseded (or cancelled) while fetching, then the newer update publishes instead.
+                if(updateCoordinator.isCurrent(generation))
+                    published = renderAndPublish(quoteCache.get(portfolio.symbols), uri, portfolio, showName, symLimit, showPrice);
             }
+
+            // Published or not, the fetched quotes are in the cache now and the next run won't refetch them, save them here.
+            if(changed > 0) // Otherwise the snapshot on disk already holds these values, only older fetch times.
+                saveSnapshot(symbols);
+            if(published && Metrics.isEnabled())
+                writeMetrics(now);
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
+        }
+    }
+
+    // Seed the quote cache from disk the first time through, so a restarted process has something to show right away.
+    // (returns true if quotes were restored)
+    private boolean loadSnapshot() {
+        if(snapshotStore != null)
+            return false;
+        snapshotStore = new QuoteSnapshotStore(new File(getFilesDir(), SNAPSHOT_FILE));
+        QuoteSnapshotStore.Snapshot snapshot = snapshotStore.load(); // Null if missing or corrupt, just start empty.
+        if(snapshot == null)
+            return false;
+        for (int i = 0; i < snapshot.quotes.size(); i++)
+            quoteCache.put(snapshot.quotes.get(i), snapshot.fetchedAt.get(i));
+        quotesVersion++;
+        return true;
+    }
+
+    // ^MYINDEX as a quote, from the aggregator. (call with stateLock held)
+    private SymbolInfo customIndexQuote() {
+        SymbolInfo index = new SymbolInfo();
+        index.Symbol = CUSTOM_INDEX;
+        index.Change = aggregator.getChange();
+        index.Percent = aggregator.getPercent();
+        return index;
+    }
+
+    // Persist the cached symbols with their own fetch times, failing to do so only costs a slower start next time.
+    private void saveSnapshot(String[] symbols) {
+        try {
+            QuoteSnapshotStore.Snapshot snapshot = new QuoteSnapshotStore.Snapshot();
+            for (SymbolInfo si : quoteCache.get(symbols))
+                snapshot.add(si, quoteCache.getFetchedAt(si.Symbol));
+            snapshotStore.save(snapshot);
         }
         catch (Exception e) {
-            debugPrint(TAG, e.getMessage());
+            debugPrint(TAG, e);
         }
     }
 
-    // Various order by logic for symbols.
-    private static class SymbolInfoComparator implements Comparator<SymbolInfo> {
-        private String symOrder = null;
-        public SymbolInfoComparator(String order) {
-            symOrder = order;
+    // One notification listing every alert from a fetch, replacing any previous one.
+    private void notifyAlerts(List<AlertEngine.Alert> fired, Uri uri) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (AlertEngine.Alert alert : fired) {
+                AlertEngine.Rule rule = alert.rule;
+                String unit = rule.percent ? "%" : "";
+                if(sb.length() > 0)
+                    sb.append('\n');
+                sb.append(String.format("%s %s%.2f%s (%s %s%.2f%s)", rule.symbol, (alert.value > 0 ? "+" : ""), alert.value, unit,
+                        getString(rule.above ? R.string.portfolio_alert_above : R.string.portfolio_alert_below),
+                        (rule.threshold > 0 ? "+" : ""), rule.threshold, unit));
+            }
+            String text = sb.toString();
+
+            Notification.Builder builder = new Notification.Builder(this)
+                    .setSmallIcon(R.drawable.ic_launcher)
+                    .setContentTitle(getString(R.string.portfolio_alert_title))
+                    .setContentText(text)
+                    .setStyle(new Notification.BigTextStyle().bigText(text))
+                    .setAutoCancel(true);
+            if(uri != null)
+                builder.setContentIntent(PendingIntent.getActivity(this, 0, new Intent(Intent.ACTION_VIEW, uri), PendingIntent.FLAG_UPDATE_CURRENT));
+            NotificationManager nm = (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
+            nm.notify(NOTIFICATION_ID_ALERTS, builder.build());
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
         }
-        public int compare(SymbolInfo s1, SymbolInfo s2) {
-            if(symOrder != null && !symOrder.isEmpty()) {
-                if (symOrder.equals("percent"))
-                    return (int)((s2.Percent*100) - (s1.Percent*100));
-                else if (symOrder.equals("percent_reverse"))
-                    return (int)((s1.Percent*100) - (s2.Percent*100));
-                else if (symOrder.equals("price"))
-                    return (int)((s2.Change*100) - (s1.Change*100));
-                else if (symOrder.equals("price_reverse"))
-                    return (int)((s1.Change*100) - (s2.Change*100));
+    }
+
+    // Hand ed to dashclock unless it shows exactly what was published last, each publish is an IPC round trip and a redraw.
+    private void publish(ExtensionData ed) {
+        synchronized (stateLock) {
+            Intent click = ed.clickIntent();
+            String fingerprint = ed.visible() + "\n" + ed.icon() + "\n" + ed.status() + "\n" + ed.expandedTitle() + "\n"
+                    + ed.expandedBody() + "\n" + (click != null ? click.toUri(0) : "");
+            if(fingerprint.equals(lastFingerprint)) {
+                Metrics.PUBLISHES_SKIPPED.increment();
+                return;
             }
+            long start = Metrics.PUBLISH.start();
+            publishUpdate(ed);
+            Metrics.PUBLISH.stop(start);
+            lastFingerprint = fingerprint;
+        }
+    }
 
-            // Default to alphabetical if not matched.
-            return s1.Symbol.compareTo(s2.Symbol);
+    // Render portfolio out of quotes and publish it, call with stateLock held. The render is skipped if nothing it depends
+    // on changed since the last one, except in the history display modes which move with time. (returns false on critical errors)
+    private boolean renderAndPublish(List<SymbolInfo> quotes, Uri uri, Portfolio portfolio, boolean showName, int symLimit, boolean showPrice) {
+        String key = null;
+        if(BodyRenderer.MODE_QUOTE.equals(portfolio.mode)) {
+            key = portfolio.name + "|" + portfolio.title + "|" + portfolio.order + "|" + showName + "|" + symLimit + "|" + showPrice + "|"
+                    + reverseMode + "|" + uri + "|" + Locale.getDefault() + "|" + quotesVersion;
+            if(key.equals(lastRenderKey) && Arrays.equals(portfolio.symbols, lastRenderSymbols)) {
+                Metrics.RENDERS_SKIPPED.increment();
+                return true;
+            }
         }
+
+        ExtensionData ed = createExtensionData(uri);
+        if(!renderSymbols(ed, quotes, portfolio, showName, symLimit, reverseMode, showPrice))
+            return false;
+        publish(ed);
+        lastRenderKey = key;
+        lastRenderSymbols = portfolio.symbols;
+        return true;
     }
 
-    // Take an arbitrary string of symbols and normalize them to a specified standard string.
-    public static String normalizeSymbols(String symsIn, String delimiter, int limit) {
-        String symsOut = "";
-        List<String> symArray = new ArrayList<String>();
+    // Machine readable dump of Metrics plus the counters other classes keep, replaced atomically on every update.
+    private void writeMetrics(long now) {
+        try {
+            Map<String, Long> gauges = new LinkedHashMap<String, Long>();
+            gauges.put("cache_hits", quoteCache.getHits());
+            gauges.put("cache_misses", quoteCache.getMisses());
+            gauges.put("http_requests", quoteTransport.getRequests());
+            gauges.put("http_not_modified", quoteTransport.getNotModified());
+            gauges.put("http_bytes", quoteTransport.getBytesTransferred());
+            gauges.put("http_connections", quoteTransport.getConnectionsOpened());
+            gauges.put("hedges", yahooProvider.getHedges());
+            gauges.put("failovers", yahooProvider.getFailovers());
+            gauges.put("secondary_wins", yahooProvider.getSecondaryWins());
+            gauges.put("update_requests", updateCoordinator.getRequests());
+            gauges.put("update_coalesced", updateCoordinator.getCoalesced());
+            gauges.put("update_runs", updateCoordinator.getRuns());
+            gauges.put("history_bytes", quoteHistory.memoryBytes());
+
+            // Our external files dir needs no permission from API 19 on. Before that, or unmounted, it goes to internal storage.
+            String json = Metrics.toJson(now, gauges);
+            File dir = getExternalFilesDir(null);
+            if(dir == null || !writeAtomically(new File(dir, METRICS_FILE), json))
+                writeAtomically(new File(getFilesDir(), METRICS_FILE), json);
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
+        }
+    }
+
+    // Write through a temporary file and rename, readers never see a partial file. (returns false on failure)
+    private boolean writeAtomically(File file, String text) {
+        File tmp = new File(file.getPath() + ".tmp");
         try {
-            Pattern p = Pattern.compile("[A-Z0-9.^-]+");
-            Matcher m = p.matcher(symsIn.toUpperCase());
-            while (m.find()) {
-                String sym = m.group(0);
-                if(sym.length() < 1 || symArray.contains(sym) || sym.equals(CUSTOM_INDEX)) // Exempt "^MYINDEX" from all symbol lists, it doesn't exist.
-                    continue;
-                symArray.add(sym);
-
-                // 0 = Unlimited.
-                if(limit > 0 && symArray.size() >= limit)
-                    break;
+            Writer w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                w.write(text);
             }
-            if(symArray.size() > 0) {
-                Collections.sort(symArray);
-                symsOut = TextUtils.join(delimiter, symArray.toArray());
+            finally {
+                w.close();
             }
         }
+        catch (IOException e) {
+            debugPrint(TAG, e);
+            return false;
+        }
+        if(tmp.renameTo(file))
+            return true;
+        debugPrint(TAG, "Unable to write " + file);
+        return false;
+    }
+
+    // Create Extension data and fill in defacto defaults.
+    private ExtensionData createExtensionData(Uri uri) {
+        ExtensionData ed = new ExtensionData()
+                .visible(true)
+                .icon(R.drawable.ic_launcher)
+                .status("[No Data]")
+                .expandedTitle("[No data available]")
+                .expandedBody("");
+
+        // Add uri if we have a valid one.
+        if(uri != null)
+            ed.clickIntent(new Intent(Intent.ACTION_VIEW, uri));
+        return ed;
+    }
+
+    // Take an arbitrary string of symbols and normalize them to a specified standard string.
+    public static String normalizeSymbols(String symsIn, String delimiter, int limit) {
+        try {
+            return symbolNormalizer.normalize(symsIn, delimiter, limit);
+        }
         catch (Exception e) {
-            debugPrint(TAG, e.getMessage());
+            debugPrint(TAG, e);
         }
 
         // Could potentially be empty from exceptions.
-        return symsOut;
+        return "";
+    }
+
+    // Same as above as an array, callers must not modify it. (shared with the normalizer's cache)
+    public static String[] normalizeSymbolArray(String symsIn, int limit) {
+        try {
+            return symbolNormalizer.normalize(symsIn, limit);
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
+        }
+        return new String[0];
     }
 
     // Convert symbol (index) name to a short description to be used in the header line. (ie. "^GSPC" = "S&P")
@@ -214,161 +484,170 @@ public class PortfolioExtension extends DashClockExtension {
                 ret = getResources().getStringArray(R.array.portfolio_sym_title_short_names)[titleIndex];
         }
         catch (Exception e) {
-            debugPrint(TAG, e.getMessage());
+            debugPrint(TAG, e);
         }
 
         // Can return original source string on exception, this is for display purposes and is okay.
         return ret;
     }
 
-    // Call and parse finance url, update ExtensionData as needed. (returns false on critical errors)
-    private boolean fetchSymbols(ExtensionData ed, String syms, String symOrder, String symTitle, boolean reverseMode, boolean showPrice)
+    // Call and parse finance url, record the results to the quote cache and check alerts. (returns the number of changed quotes, -1 on critical errors)
+    private int fetchSymbols(QuoteProvider provider, String[] symbols, long now, Uri uri)
     {
         // Some basic sanity, shouldn't happen.
-        if(syms == null || syms.isEmpty() || symTitle == null ||  symTitle.isEmpty() || ed == null)
-            return false;
+        if(symbols == null || symbols.length == 0)
+            return -1;
+
+        // Runs on the update worker, only the aggregator needs the lock.
+        int changed = 0;
+        long start = Metrics.FETCH.start();
+        try {
+            quoteTransport.closeIdleConnections();
+            demoProvider.advance(); // Let the demo market move between fetches.
+            List<SymbolInfo> quotes = quoteFetcher.fetch(provider, symbols);
+            List<AlertEngine.Alert> fired = new ArrayList<AlertEngine.Alert>();
+            synchronized (stateLock) {
+                for (SymbolInfo si : quotes) {
+                    if(si.Error)
+                        Metrics.ERROR_SYMBOLS.increment();
+                    quoteHistory.record(si, now); // Every sample, changed or not.
+                    if(quoteCache.put(si, now)) {
+                        aggregator.update(si);
+                        alertEngine.evaluate(si, now, fired); // Unchanged quotes can't cross anything.
+                        changed++;
+                    }
+                }
+                if(changed > 0)
+                    quotesVersion++;
+
+                // ^MYINDEX can have alerts too.
+                if(changed > 0 && aggregator.getValidCount() > 0)
+                    alertEngine.evaluate(customIndexQuote(), now, fired);
+            }
+            if(!fired.isEmpty())
+                notifyAlerts(fired, uri);
+        }
+        catch (Exception e) {
+            Metrics.FETCH_FAILURES.increment();
+            debugPrint(TAG, e);
+            return -1;
+        }
+        finally {
+            Metrics.FETCH.stop(start);
+        }
+        return changed;
+    }
 
-        String symQuery;
-        try { symQuery = URLEncoder.encode(syms, "utf-8"); }
-        catch (Exception e) { return false; }
+    // Aggregate, order and format quotes, update ExtensionData as needed. (returns false on critical errors)
+    private boolean renderSymbols(ExtensionData ed, List<SymbolInfo> quotes, Portfolio portfolio, boolean showName, int symLimit, boolean reverseMode, boolean showPrice)
+    {
+        // Some basic sanity, shouldn't happen.
+        String symTitle = portfolio.title;
+        if(quotes == null || symTitle == null ||  symTitle.isEmpty() || ed == null)
+            return false;
 
         boolean ret = true; // No early returns from here on.
 
-        // Asynchronous HTTP request not necessary for this extension, dashclock expected to handle anomalies.
         try {
-            HttpClient httpclient = new DefaultHttpClient();
-            HttpGet httpget = new HttpGet(FINANCE_URL  + symQuery);
-            HttpResponse response = httpclient.execute(httpget);
-            HttpEntity entity = response.getEntity();
-            if (entity != null) {
-                InputStream is = null;
-                try {
-                    is = entity.getContent();
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-                    List<SymbolInfo> symbolInfo = new ArrayList<SymbolInfo>(); // Used for all non-main indexes/symbols.
-                    SymbolInfo siMaster = null; // Used for the main index/symbol.
-                    double allChange = 0, allPercent = 0; // Used for averaging the portfolio. (^MYINDEX)
-                    int allErrors = 0; // Used to mark symbols as errors, to be removed from average totals.
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        String[] lineParts = line.split("[^A-Za-z0-9.^_-]+"); // Hokey logic to parse .csv
-                        if(lineParts.length >= 4) {
-                            SymbolInfo si = new SymbolInfo();
-                            si.Symbol = lineParts[1];
-                            si.Error = true;
-                            try {
-                                si.Change = Double.parseDouble(lineParts[2]);
-                                si.Percent = Double.parseDouble(lineParts[3]);
-                                si.Error = false;
-                            }
-                            catch (Exception e) {
-                                si.Change = 0;
-                                si.Percent = 0;
-                            }
-
-                            // This is the master/title symbol/index, record it to the master SymbolInfo.
-                            if(si.Symbol.equals(symTitle))
-                                siMaster = si;
-
-                            // Normal symbol to add to the list of overall symbols, add to overall change/percentage as well.
-                            else {
-                                symbolInfo.add(si);
-
-                                // If symbol errored don't pollute the average with 0s.
-                                if(!si.Error) {
-                                    allChange += si.Change;
-                                    allPercent += si.Percent;
-                                }
-                                else
-                                    allErrors++;
-                            }
-                        }
-                    }
+            List<SymbolInfo> symbolInfo = new ArrayList<SymbolInfo>(); // Used for all non-main indexes/symbols.
+            SymbolInfo siMaster = null; // Used for the main index/symbol.
+            int allErrors = 0; // Used to mark symbols as errors.
+            for (SymbolInfo si : quotes) {
+
+                // This is the master/title symbol/index, record it to the master SymbolInfo.
+                if(si.Symbol.equals(symTitle))
+                    siMaster = si;
+
+                // Normal symbol to add to the list of overall symbols. (the ^MYINDEX totals are kept by aggregator)
+                else {
+                    symbolInfo.add(si);
+                    if(si.Error)
+                        allErrors++;
+                }
+            }
 
-                    // Add the body (all symbols) if applicable.
-                    int totalValidSymbols = symbolInfo.size() - allErrors;
-                    if(totalValidSymbols > 0) {
-
-                        // Record portfolio pseudo-index "^MYINDEX" average now that we have gone through all the symbols and we have at least one valid one.
-                        try {
-                            if(symTitle.equals(CUSTOM_INDEX)) {
-                                siMaster = new SymbolInfo();
-                                siMaster.Symbol = CUSTOM_INDEX;
-                                siMaster.Change = allChange / totalValidSymbols;
-                                siMaster.Percent = allPercent / totalValidSymbols;
-                                siMaster.Error = false;
-                            }
-                        }
-                        catch (Exception e) {
-                            if(siMaster != null)
-                                siMaster.Error = true;
-                        }
-
-                        // Alphabetical order base for all. (default)
-                        Collections.sort(symbolInfo, new SymbolInfoComparator(null));
-
-                        // Apply secondary ordering, if applicable.
-                        if(symOrder != null && !symOrder.isEmpty())
-                            Collections.sort(symbolInfo, new SymbolInfoComparator(symOrder));
-
-                        if(reverseMode)
-                            Collections.reverse(symbolInfo);
-
-                        String bodyLine = "";
-                        for (SymbolInfo si : symbolInfo) {
-                            String symbolData;
-                            if(si.Error)
-                                symbolData = "ERR";
-                            else if(showPrice)
-                                symbolData = String.format("%s%.2f", (si.Change > 0 ? "+" : ""), si.Change);
-                            else // Show percentage.
-                                symbolData = String.format("%s%.2f%%", (si.Percent > 0 ? "+" : ""), si.Percent);
-
-                            bodyLine += String.format("%s[%s] ", si.Symbol, symbolData);
-                        }
-
-                        // Update extension data body.
-                        ed.expandedBody(bodyLine);
-                    }
+            // Add the body (all symbols) if applicable.
+            int totalValidSymbols = symbolInfo.size() - allErrors;
+            if(totalValidSymbols > 0) {
 
-                    // Add the status/main title line if applicable.
-                    if(siMaster != null) {
-                        try {
-                            // Similar logic to the normal symbol display, except price change mode (showPrice) isn't allowed.
-                            String masterSymbolData = (siMaster.Error ? "ERR" : String.format("%s%.2f%%", (siMaster.Percent > 0 ? "+" : ""), siMaster.Percent));
-
-                            // Update small/extended extension data.
-                            ed.status(masterSymbolData).expandedTitle(String.format("%s [%s]", symbolNameToShortName(siMaster.Symbol), masterSymbolData));
-                        }
-                        catch (Exception e) {
-                            debugPrint(TAG, e.getMessage());
-                        }
+                // Record portfolio pseudo-index "^MYINDEX" (weighted) average now that we have at least one valid symbol.
+                try {
+                    if(symTitle.equals(CUSTOM_INDEX)) {
+                        siMaster = new SymbolInfo();
+                        siMaster.Symbol = CUSTOM_INDEX;
+                        siMaster.Change = aggregator.getChange();
+                        siMaster.Percent = aggregator.getPercent();
+                        siMaster.Error = false;
                     }
                 }
                 catch (Exception e) {
-                    debugPrint(TAG, e.getMessage());
-                    ret = false;
+                    if(siMaster != null)
+                        siMaster.Error = true;
                 }
-                finally {
-                    try {
-                        if(is != null)
-                            is.close();
-                    }
-                    catch (Exception e) {
-                        debugPrint(TAG, e.getMessage());
-                        ret = false;
+
+                // Order (alphabetical base, ties included), reverse and trim to the top symLimit in one pass.
+                int allSymbols = symbolInfo.size();
+                long start = Metrics.SORT.start();
+                symbolInfo = symbolOrdering.order(symbolInfo, portfolio.order, reverseMode, symLimit);
+                Metrics.SORT.stop(start);
+
+                // Update extension data body, only as much as fits in the expanded body.
+                start = Metrics.RENDER.start();
+                ed.expandedBody(bodyRenderer.renderBody(symbolInfo, showPrice, portfolio.mode, quoteHistory, BODY_CHAR_BUDGET, allSymbols - symbolInfo.size()));
+                Metrics.RENDER.stop(start);
+            }
+
+            // Add the status/main title line if applicable.
+            if(siMaster != null) {
+                try {
+                    // Similar logic to the normal symbol display, except price change mode (showPrice) isn't allowed.
+                    String masterSymbolData = bodyRenderer.formatPercent(siMaster);
+
+                    // With holdings configured the portfolio title also carries the day's P&L and how many symbols were left out.
+                    String masterTitle = String.format("%s [%s]", symbolNameToShortName(siMaster.Symbol), masterSymbolData);
+                    if(showName)
+                        masterTitle = portfolio.name + ": " + masterTitle;
+                    if(siMaster.Symbol.equals(CUSTOM_INDEX) && aggregator.isWeighted()) {
+                        double pnl = aggregator.getProfitLoss();
+                        masterTitle += String.format(" %s%.2f", (pnl > 0 ? "+" : ""), pnl);
+                        if(aggregator.getErrorCount() > 0)
+                            masterTitle += String.format(" (%d ERR)", aggregator.getErrorCount());
                     }
+
+                    // Update small/extended extension data.
+                    ed.status(masterSymbolData).expandedTitle(masterTitle);
+                }
+                catch (Exception e) {
+                    debugPrint(TAG, e);
                 }
             }
         }
         catch (Exception e) {
-            debugPrint(TAG, e.getMessage());
+            debugPrint(TAG, e);
             ret = false;
         }
         return ret;
     }
 
+    // Integer preference stored as a string (ListPreference), default on anything unexpected.
+    private static int parseInt(String value, int def) {
+        try {
+            if(value != null)
+                return Integer.parseInt(value);
+        }
+        catch (Exception e) {
+            debugPrint(TAG, e);
+        }
+        return def;
+    }
+
     private static void debugPrint(String tag, String line) {
         Log.i(tag, line);
     }
+
+    // Exceptions often carry no message, log the type as well (and count them).
+    private static void debugPrint(String tag, Exception e) {
+        Metrics.EXCEPTIONS.increment();
+        Log.i(tag, String.valueOf(e));
+    }
 }
\ No newline at end of file
@@ -42,11 +42,21 @@ public class PortfolioSettingsActivity extends PreferenceActivity {
         // Bind the preferences to their values.  When their values change, their summaries are updated to reflect the new value.
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_SYM_TITLE), false);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_SYMS), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_PORTFOLIOS), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_HOLDINGS), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_ALERTS), false);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_SYMS_ORDER), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_SYMS_LIMIT), false);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_CLICK), false);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_CLICK_REVERSE), true);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_CLICK_CYCLE), true);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_HIDE_ON_WEEKENDS), true);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_EXTENDED_HOURS), true);
         bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_SHOW_PRICE), true);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_DISPLAY_MODE), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_CACHE_TTL), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_QUOTE_SOURCE), false);
+        bindPreferenceSummaryToValue(findPreference(PortfolioExtension.PREF_PORTFOLIO_DEBUG_METRICS), true);
     }
 
     @Override
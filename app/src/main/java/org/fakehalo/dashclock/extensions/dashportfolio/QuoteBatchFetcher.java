@@ -0,0 +1,112 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Splits a symbol list into batches (keeps urls short) and fetches the batches from a QuoteProvider concurrently on a
+// bounded executor. A failed batch only marks its own symbols as errors, the rest of the results are still returned.
+public class QuoteBatchFetcher {
+    public static final int DEFAULT_BATCH_SIZE = 50; // Symbols per request.
+    public static final int DEFAULT_MAX_THREADS = 4; // Concurrent requests.
+
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    // Per batch result slots, reused between fetches. (only touched by the thread running that batch)
+    private final List<List<SymbolInfo>> batchSlots = new ArrayList<List<SymbolInfo>>();
+
+    public QuoteBatchFetcher() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_THREADS);
+    }
+
+    public QuoteBatchFetcher(int batchSize, int maxThreads) {
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxThreads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "QuoteBatchFetcher-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // Fetch all symbols, results are in batch order. (throws if every batch failed, nothing worth publishing)
+    public List<SymbolInfo> fetch(QuoteProvider provider, String[] symbols) throws IOException {
+        int batches = (symbols.length + batchSize - 1) / batchSize;
+        while (batchSlots.size() < batches)
+            batchSlots.add(new ArrayList<SymbolInfo>());
+
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(batches);
+        for (int b = 0; b < batches; b++) {
+            Callable<Integer> task = batchTask(provider, symbols, b * batchSize, Math.min(symbols.length, (b + 1) * batchSize), batchSlots.get(b));
+
+            // Single batch, no point in handing off to another thread.
+            if (batches == 1) {
+                FutureTask<Integer> inline = new FutureTask<Integer>(task);
+                inline.run();
+                futures.add(inline);
+            }
+            else
+                futures.add(executor.submit(task));
+        }
+
+        List<SymbolInfo> ret = new ArrayList<SymbolInfo>(symbols.length);
+        IOException lastError = null;
+        int failures = 0;
+        for (int b = 0; b < batches; b++) {
+            List<SymbolInfo> slots = batchSlots.get(b);
+            try {
+                int rows = futures.get(b).get();
+                for (int i = 0; i < rows; i++)
+                    ret.add(slots.get(i));
+            }
+            catch (Exception e) {
+                lastError = asIOException(e);
+                failures++;
+
+                // Mark just this batch's symbols as errors.
+                for (int i = b * batchSize; i < Math.min(symbols.length, (b + 1) * batchSize); i++) {
+                    SymbolInfo si = new SymbolInfo();
+                    si.Symbol = symbols[i];
+                    si.Error = true;
+                    ret.add(si);
+                }
+            }
+        }
+
+        if (batches > 0 && failures == batches)
+            throw lastError;
+        return ret;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Callable<Integer> batchTask(final QuoteProvider provider, final String[] symbols, final int from, final int to, final List<SymbolInfo> slots) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return provider.fetchQuotes(symbols, from, to, slots);
+            }
+        };
+    }
+
+    private static IOException asIOException(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IOException)
+            return (IOException)cause;
+        return new IOException(cause.toString());
+    }
+}
@@ -0,0 +1,92 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// In-memory quotes keyed by symbol, kept between onUpdateData calls. Entries are copies, so callers are free to reuse
+// the SymbolInfo objects they put in. Thread-safe.
+public class QuoteCache {
+    public static final long DEFAULT_TTL_MS = 60000;
+
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private long ttlMs = DEFAULT_TTL_MS;
+    private long hits, misses;
+
+    private static class Entry {
+        final SymbolInfo si = new SymbolInfo();
+        long fetchedAt; // System.currentTimeMillis() of the fetch that produced the value.
+    }
+
+    public synchronized void setTtl(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    // Record a fetched quote. An errored quote never replaces a good one, the good one is kept (still aging) instead.
+    // Returns true if the cached value changed.
+    public synchronized boolean put(SymbolInfo si, long fetchedAt) {
+        Entry e = entries.get(si.Symbol);
+        boolean changed = e == null;
+        if (e == null) {
+            e = new Entry();
+            e.si.Symbol = si.Symbol;
+            entries.put(si.Symbol, e);
+        }
+        else if (si.Error && !e.si.Error)
+            return false;
+        changed |= e.si.Error != si.Error || e.si.Change != si.Change || e.si.Percent != si.Percent;
+        e.si.Change = si.Change;
+        e.si.Percent = si.Percent;
+        e.si.Error = si.Error;
+        e.fetchedAt = fetchedAt;
+        return changed;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // Copies of whatever is cached for symbols, in the same order, regardless of age. Missing symbols are skipped.
+    public synchronized List<SymbolInfo> get(String[] symbols) {
+        List<SymbolInfo> ret = new ArrayList<SymbolInfo>(symbols.length);
+        for (String sym : symbols) {
+            Entry e = entries.get(sym);
+            if (e != null)
+                ret.add(copy(e.si));
+        }
+        return ret;
+    }
+
+    // Symbols that are missing or older than the TTL, these are the only ones worth requesting.
+    public synchronized String[] getStale(String[] symbols, long now) {
+        List<String> ret = new ArrayList<String>();
+        for (String sym : symbols) {
+            Entry e = entries.get(sym);
+            if (e == null || now - e.fetchedAt >= ttlMs || now < e.fetchedAt) {
+                ret.add(sym);
+                misses++;
+            }
+            else
+                hits++;
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    // When the cached quote for symbol was fetched, 0 if there is none.
+    public synchronized long getFetchedAt(String symbol) {
+        Entry e = entries.get(symbol);
+        return e != null ? e.fetchedAt : 0;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    private static SymbolInfo copy(SymbolInfo src) {
+        SymbolInfo si = new SymbolInfo();
+        si.Symbol = src.Symbol;
+        si.Change = src.Change;
+        si.Percent = src.Percent;
+        si.Error = src.Error;
+        return si;
+    }
+}
@@ -0,0 +1,226 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+// Streaming parser for the finance .csv feed (ie. "AAPL",+1.23,"+0.45%"), tokenizes straight from the byte stream.
+// Rows are written into caller supplied SymbolInfo slots that are reused between calls, so a steady state parse
+// allocates nothing per row. Not thread-safe, use one instance per thread.
+public class QuoteCsvParser {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_FIELD_LENGTH = 64; // Anything longer is truncated, no valid symbol/number is this long.
+    private static final int MAX_FAST_DIGITS = 15; // Digits that always fit exactly in a double mantissa.
+    private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
+    // Field positions in a row. (f=sc6p2)
+    private static final int FIELD_SYMBOL = 0;
+    private static final int FIELD_CHANGE = 1;
+    private static final int FIELD_PERCENT = 2;
+    private static final int MIN_FIELDS = 3;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final char[] field = new char[MAX_FIELD_LENGTH];
+    private final char[] symbol = new char[MAX_FIELD_LENGTH];
+
+    // Parse state, carried across buffer boundaries.
+    private int rows;
+    private boolean inQuotes;
+    private boolean quotePending; // Saw a quote inside a quoted field, either an escaped quote or the closing one.
+
+    // Current row state.
+    private int fieldLength;
+    private int fieldIndex;
+    private int symbolLength;
+    private double change, percent;
+    private boolean changeValid, percentValid;
+    private boolean rowHasData;
+
+    // Parse every row from the stream into slots, growing the list when needed. (returns the number of rows written)
+    public int parse(InputStream is, List<SymbolInfo> slots) throws IOException {
+        begin();
+        int len;
+        while ((len = is.read(buffer, 0, BUFFER_SIZE)) != -1)
+            consume(buffer, len, slots);
+        return end(slots);
+    }
+
+    // Same as above for a response that has already been read into memory.
+    public int parse(byte[] data, int length, List<SymbolInfo> slots) {
+        begin();
+        consume(data, length, slots);
+        return end(slots);
+    }
+
+    private void begin() {
+        rows = 0;
+        inQuotes = false;
+        quotePending = false;
+        resetRow();
+    }
+
+    private int end(List<SymbolInfo> slots) {
+
+        // Last row may not be newline terminated.
+        if (endRow(slots, rows))
+            rows++;
+        return rows;
+    }
+
+    private void consume(byte[] data, int len, List<SymbolInfo> slots) {
+        for (int i = 0; i < len; i++) {
+            char c = (char)(data[i] & 0xff); // Feed is plain ASCII.
+
+            if (quotePending) {
+                quotePending = false;
+                if (c == '"') { // "" is an escaped quote.
+                    append(c);
+                    continue;
+                }
+                inQuotes = false;
+            }
+
+            if (inQuotes) {
+                if (c == '"')
+                    quotePending = true;
+                else
+                    append(c);
+            }
+            else if (c == '"') {
+                inQuotes = true;
+                rowHasData = true;
+            }
+            else if (c == ',')
+                endField();
+            else if (c == '\n') {
+                if (endRow(slots, rows))
+                    rows++;
+            }
+            else if (c != '\r' && c != ' ' && c != '\t') // Unquoted whitespace is insignificant.
+                append(c);
+        }
+    }
+
+    private void resetRow() {
+        fieldLength = 0;
+        fieldIndex = 0;
+        symbolLength = 0;
+        change = percent = 0;
+        changeValid = percentValid = false;
+        rowHasData = false;
+    }
+
+    private void append(char c) {
+        rowHasData = true;
+        if (fieldLength < MAX_FIELD_LENGTH)
+            field[fieldLength++] = c;
+    }
+
+    private void endField() {
+        rowHasData = true;
+        if (fieldIndex == FIELD_SYMBOL) {
+            System.arraycopy(field, 0, symbol, 0, fieldLength);
+            symbolLength = fieldLength;
+        }
+        else if (fieldIndex == FIELD_CHANGE) {
+            change = parseDecimal(field, fieldLength);
+            changeValid = !Double.isNaN(change);
+        }
+        else if (fieldIndex == FIELD_PERCENT) {
+            percent = parseDecimal(field, fieldLength);
+            percentValid = !Double.isNaN(percent);
+        }
+        fieldIndex++;
+        fieldLength = 0;
+    }
+
+    // Write the finished row to slots[index]. (returns false if the row was blank or malformed)
+    private boolean endRow(List<SymbolInfo> slots, int index) {
+        if (!rowHasData) {
+            resetRow();
+            return false;
+        }
+        endField();
+        boolean valid = fieldIndex >= MIN_FIELDS && symbolLength > 0;
+        if (valid) {
+            SymbolInfo si;
+            if (index < slots.size())
+                si = slots.get(index);
+            else {
+                si = new SymbolInfo();
+                slots.add(si);
+            }
+
+            // Only allocate a new symbol string if the slot held something different last time.
+            if (si.Symbol == null || !equalsChars(si.Symbol, symbol, symbolLength))
+                si.Symbol = new String(symbol, 0, symbolLength);
+
+            si.Error = !(changeValid && percentValid);
+            si.Change = si.Error ? 0 : change;
+            si.Percent = si.Error ? 0 : percent;
+        }
+        resetRow();
+        return valid;
+    }
+
+    private static boolean equalsChars(String s, char[] chars, int length) {
+        if (s.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[i])
+                return false;
+        }
+        return true;
+    }
+
+    // Parse [+-]digits[.digits][%] without creating a String. (returns NaN if not a number, ie. "N/A")
+    static double parseDecimal(char[] chars, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (chars[0] == '+' || chars[0] == '-')) {
+            negative = chars[0] == '-';
+            i++;
+        }
+
+        // Ignore a trailing percent sign. (p2 field)
+        if (length > i && chars[length - 1] == '%')
+            length--;
+
+        long mantissa = 0;
+        int digits = 0, fractionDigits = 0;
+        boolean seenDot = false, seenDigit = false;
+        for (; i < length; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                seenDigit = true;
+                if (mantissa != 0)
+                    digits++;
+                if (seenDot)
+                    fractionDigits++;
+            }
+            else if (c == '.' && !seenDot)
+                seenDot = true;
+            else
+                return Double.NaN;
+            if (digits > MAX_FAST_DIGITS || fractionDigits >= POW10.length)
+                return parseDecimalSlow(chars, length);
+        }
+        if (!seenDigit)
+            return Double.NaN; // Empty, sign only or a lone dot.
+
+        // Both operands are exact, so a single division rounds the same way Double.parseDouble does.
+        double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    // Rare: more precision than the fast path can represent exactly.
+    private static double parseDecimalSlow(char[] chars, int length) {
+        try {
+            return Double.parseDouble(new String(chars, 0, length));
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
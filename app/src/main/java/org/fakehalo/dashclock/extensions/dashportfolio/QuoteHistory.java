@@ -0,0 +1,175 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Intraday samples per symbol, kept in fixed capacity ring buffers of primitive arrays so the history of a trading day
+// costs no boxing and a known amount of memory. Fed with every successful quote, a new exchange day starts the
+// symbol's series over. Thread-safe.
+public class QuoteHistory {
+    public static final int CAPACITY = 132; // A regular session (390 minutes) at MIN_SPACING_MS, plus a little.
+    public static final long MIN_SPACING_MS = 3 * 60 * 1000L; // Between kept samples, newer ones keep replacing the latest until then.
+    public static final long EXTENDED_SPACING_MS = 8 * 60 * 1000L; // Used instead with extended hours, fits 04:00-20:15 in CAPACITY.
+    public static final int MAX_SYMBOLS = 1024; // Least recently updated series are dropped past this.
+    private static final int INITIAL_CAPACITY = 16; // Grown up to CAPACITY, most series never fill a day.
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final char[] SPARKS = { '\u2581', '\u2582', '\u2583', '\u2584', '\u2585', '\u2586', '\u2587', '\u2588' }; // Block elements.
+
+    private final TimeZone timeZone; // Exchange time zone, decides where a trading day starts.
+    private long spacingMs = MIN_SPACING_MS;
+    private final LinkedHashMap<String, Series> series = new LinkedHashMap<String, Series>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Series> eldest) {
+            return size() > MAX_SYMBOLS;
+        }
+    };
+
+    // Oldest sample at start, newest at (start + size - 1) % capacity.
+    private static class Series {
+        long day;
+        long[] times = new long[INITIAL_CAPACITY];
+        double[] change = new double[INITIAL_CAPACITY];
+        double[] percent = new double[INITIAL_CAPACITY];
+        int start, size;
+
+        int index(int i) {
+            return (start + i) % times.length;
+        }
+
+        double value(int i, boolean price) {
+            return price ? change[index(i)] : percent[index(i)];
+        }
+    }
+
+    public QuoteHistory(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    // Widen the sample spacing so a whole extended session fits, otherwise the afternoon overwrites the pre-market.
+    public synchronized void setExtendedHours(boolean extendedHours) {
+        spacingMs = extendedHours ? EXTENDED_SPACING_MS : MIN_SPACING_MS;
+    }
+
+    // Add a quote fetched at time (epoch milliseconds), errors carry no value and are skipped.
+    public synchronized void record(SymbolInfo si, long time) {
+        if (si.Error)
+            return;
+        long day = (time + timeZone.getOffset(time)) / DAY_MS;
+        Series s = series.get(si.Symbol);
+        if (s == null) {
+            s = new Series();
+            series.put(si.Symbol, s);
+        }
+        if (s.size > 0 && s.day != day)
+            s.start = s.size = 0;
+        s.day = day;
+
+        int i;
+        if (s.size > 1 && s.times[s.index(s.size - 1)] - s.times[s.index(s.size - 2)] < spacingMs && time >= s.times[s.index(s.size - 1)])
+            i = s.index(s.size - 1); // The latest sample isn't far enough from the one before yet, just move it forward.
+        else if (s.size < s.times.length) {
+            i = s.index(s.size);
+            s.size++;
+        }
+        else if (s.times.length < CAPACITY) {
+            grow(s);
+            i = s.size++;
+        }
+        else {
+            i = s.start; // Full, overwrite the oldest.
+            s.start = (s.start + 1) % s.times.length;
+        }
+        s.times[i] = time;
+        s.change[i] = si.Change;
+        s.percent[i] = si.Percent;
+    }
+
+    // Not full yet so never wrapped (start is 0), a plain copy keeps the order.
+    private static void grow(Series s) {
+        int capacity = Math.min(CAPACITY, s.times.length * 2);
+        s.times = Arrays.copyOf(s.times, capacity);
+        s.change = Arrays.copyOf(s.change, capacity);
+        s.percent = Arrays.copyOf(s.percent, capacity);
+    }
+
+    public synchronized int size(String symbol) {
+        Series s = series.get(symbol);
+        return s != null ? s.size : 0;
+    }
+
+    // Movement over the last windowMs before the latest sample, price change if price else percent points.
+    // Measured from the oldest sample when the history is shorter than the window. (NaN without two samples)
+    public synchronized double delta(String symbol, boolean price, long windowMs) {
+        Series s = series.get(symbol);
+        if (s == null || s.size < 2)
+            return Double.NaN;
+        int last = s.size - 1;
+        long from = s.times[s.index(last)] - windowMs;
+        int base = 0;
+        for (int i = last - 1; i >= 0; i--) {
+            if (s.times[s.index(i)] <= from) {
+                base = i;
+                break;
+            }
+        }
+        return s.value(last, price) - s.value(base, price);
+    }
+
+    // Intraday high, NaN without samples.
+    public synchronized double high(String symbol, boolean price) {
+        Series s = series.get(symbol);
+        double ret = Double.NaN;
+        for (int i = 0; s != null && i < s.size; i++)
+            ret = i == 0 ? s.value(i, price) : Math.max(ret, s.value(i, price));
+        return ret;
+    }
+
+    // Intraday low, NaN without samples.
+    public synchronized double low(String symbol, boolean price) {
+        Series s = series.get(symbol);
+        double ret = Double.NaN;
+        for (int i = 0; s != null && i < s.size; i++)
+            ret = i == 0 ? s.value(i, price) : Math.min(ret, s.value(i, price));
+        return ret;
+    }
+
+    // Append up to width block characters tracing the day (oldest first), nothing without two samples.
+    public synchronized void appendSparkline(StringBuilder sb, String symbol, boolean price, int width) {
+        Series s = series.get(symbol);
+        if (s == null || s.size < 2 || width < 2)
+            return;
+        int points = Math.min(width, s.size);
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = 0; i < s.size; i++) {
+            double v = s.value(i, price);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        // Evenly spaced samples, always including the first and the latest.
+        for (int p = 0; p < points; p++) {
+            double v = s.value((int)((long)p * (s.size - 1) / (points - 1)), price);
+            int level = max > min ? (int)((v - min) / (max - min) * (SPARKS.length - 1) + 0.5) : SPARKS.length / 2;
+            sb.append(SPARKS[level]);
+        }
+    }
+
+    public synchronized void clear() {
+        series.clear();
+    }
+
+    // Rough heap used by the samples, for keeping an eye on the bound. (CAPACITY * 24 bytes per series at most)
+    public synchronized long memoryBytes() {
+        long ret = 0;
+        for (Series s : series.values())
+            ret += 64 + 3 * 16 + s.times.length * (8L + 8 + 8);
+        return ret;
+    }
+
+    // Worst case for memoryBytes(), every series full.
+    public static long maxMemoryBytes() {
+        return MAX_SYMBOLS * (64 + 3 * 16 + CAPACITY * (8L + 8 + 8));
+    }
+}
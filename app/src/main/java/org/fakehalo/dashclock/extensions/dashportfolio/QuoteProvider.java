@@ -0,0 +1,17 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.util.List;
+
+// A source of quotes, a batch of symbols in and one SymbolInfo per returned row out. Implementations are called
+// concurrently by QuoteBatchFetcher (one call per batch) and must be thread-safe.
+public interface QuoteProvider {
+
+    // Fetch quotes for symbols[from..to) into slots, reusing the entries already there and growing the list when
+    // needed. Symbols the source doesn't know may be missing or come back as errors. (returns the number of rows)
+    int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException;
+
+    // Abort the request thread is blocked on in fetchQuotes, if any, so that call fails promptly. Blocking that an
+    // interrupt already ends can be left alone.
+    void abort(Thread thread);
+}
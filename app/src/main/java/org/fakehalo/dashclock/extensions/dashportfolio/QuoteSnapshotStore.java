@@ -0,0 +1,127 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Small binary snapshot of the last successful fetch, so a restarted process can publish known values immediately.
+// Layout: magic, version, count, entries (each with its own fetch time)..., CRC32 of all preceding bytes.
+// Anything unexpected (short file, bad checksum, unknown version) reads as no snapshot at all.
+public class QuoteSnapshotStore {
+    private static final int MAGIC = 0x44505153; // "DPQS"
+    private static final short VERSION = 1;
+    private static final int MAX_SIZE = 1024 * 1024; // Far beyond any real portfolio, guards against reading junk.
+    private static final int MAX_ENTRIES = 65536;
+
+    private final File file;
+
+    public static class Snapshot {
+        public final List<SymbolInfo> quotes = new ArrayList<SymbolInfo>();
+        public final List<Long> fetchedAt = new ArrayList<Long>(); // Per quote, System.currentTimeMillis() of the fetch that produced it.
+
+        public void add(SymbolInfo si, long fetchedAt) {
+            quotes.add(si);
+            this.fetchedAt.add(fetchedAt);
+        }
+    }
+
+    public QuoteSnapshotStore(File file) {
+        this.file = file;
+    }
+
+    // Write to a temporary file and rename over the old one, a crash mid-write leaves the previous snapshot intact.
+    public void save(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + snapshot.quotes.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(snapshot.quotes.size());
+        for (int i = 0; i < snapshot.quotes.size(); i++) {
+            SymbolInfo si = snapshot.quotes.get(i);
+            out.writeUTF(si.Symbol);
+            out.writeDouble(si.Change);
+            out.writeDouble(si.Percent);
+            out.writeBoolean(si.Error);
+            out.writeLong(snapshot.fetchedAt.get(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            bytes.writeTo(fos);
+            fos.getFD().sync();
+        }
+        finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + file.getPath());
+        }
+    }
+
+    // Returns null if there is no usable snapshot.
+    public Snapshot load() {
+        try {
+            long length = file.length();
+            if (length < 8 || length > MAX_SIZE)
+                return null;
+
+            byte[] data = new byte[(int)length];
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = fis.read(data, read, data.length - read);
+                    if (n == -1)
+                        return null;
+                    read += n;
+                }
+            }
+            finally {
+                fis.close();
+            }
+
+            // Checksum first, nothing below is trusted until it matches.
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 8);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            in.skipBytes(data.length - 8);
+            if (in.readLong() != crc.getValue())
+                return null;
+
+            in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+            if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                return null;
+
+            Snapshot ret = new Snapshot();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ENTRIES)
+                return null;
+            for (int i = 0; i < count; i++) {
+                SymbolInfo si = new SymbolInfo();
+                si.Symbol = in.readUTF();
+                si.Change = in.readDouble();
+                si.Percent = in.readDouble();
+                si.Error = in.readBoolean();
+                ret.add(si, in.readLong());
+            }
+            return ret;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+// Long-lived HTTP transport for the quote feed, owned by the extension instance and shared by all fetches.
+// Pools keep-alive connections, asks for gzip, and sends ETag/Last-Modified validators back so an unchanged feed
+// comes back as an empty 304. Thread-safe.
+public class QuoteTransport {
+    public static final int CONNECT_TIMEOUT_MS = 10000;
+    public static final int READ_TIMEOUT_MS = 15000;
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 4; // Matches QuoteBatchFetcher.DEFAULT_MAX_THREADS.
+    public static final int MAX_CONNECTIONS = 2 * MAX_CONNECTIONS_PER_ROUTE; // Primary and backup host each get their own.
+    public static final int POOL_TIMEOUT_MS = 5000; // Longest wait for a free pooled connection.
+    private static final long IDLE_CONNECTION_MS = 60000;
+    private static final int INITIAL_BODY_SIZE = 8192;
+
+    private final DefaultHttpClient httpclient;
+    private final ConcurrentHashMap<String, Validators> validators = new ConcurrentHashMap<String, Validators>();
+    private final ConcurrentHashMap<Thread, HttpGet> inFlight = new ConcurrentHashMap<Thread, HttpGet>(); // For abort().
+
+    // Counters, for confirming the savings.
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong(); // Body bytes as sent over the wire. (compressed)
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    // The response body buffer is reused per thread, see get().
+    private final ThreadLocal<Response> responses = new ThreadLocal<Response>() {
+        @Override
+        protected Response initialValue() {
+            return new Response();
+        }
+    };
+
+    public static class Response {
+        public boolean notModified; // Feed unchanged since the last 200 for this url, body is empty.
+        public byte[] body = new byte[INITIAL_BODY_SIZE];
+        public int length;
+    }
+
+    private static class Validators {
+        final String etag;
+        final String lastModified;
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    public QuoteTransport() {
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MS);
+        HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT_MS);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+        ConnManagerParams.setTimeout(params, POOL_TIMEOUT_MS);
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+        // Count every new socket, pooled requests never reach openConnection.
+        ThreadSafeClientConnManager connManager = new ThreadSafeClientConnManager(params, schemeRegistry) {
+            @Override
+            protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg) {
+                return new DefaultClientConnectionOperator(schreg) {
+                    @Override
+                    public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local, HttpContext context, HttpParams params) throws IOException {
+                        connectionsOpened.incrementAndGet();
+                        long start = Metrics.CONNECT.start();
+                        super.openConnection(conn, target, local, context, params);
+                        Metrics.CONNECT.stop(start);
+                    }
+                };
+            }
+        };
+        httpclient = new DefaultHttpClient(connManager, params);
+    }
+
+    // GET url into the calling thread's Response, which stays valid until that thread's next get().
+    // Conditional requests send the validators from the last 200 for this url, only use it when that result is still at hand.
+    public Response get(String url, boolean conditional) throws IOException {
+        Response ret = responses.get();
+        ret.notModified = false;
+        ret.length = 0;
+
+        HttpGet httpget = new HttpGet(url);
+        httpget.addHeader("Accept-Encoding", "gzip");
+        Validators v = conditional ? validators.get(url) : null;
+        if (v != null) {
+            if (v.etag != null)
+                httpget.addHeader("If-None-Match", v.etag);
+            if (v.lastModified != null)
+                httpget.addHeader("If-Modified-Since", v.lastModified);
+        }
+
+        requests.incrementAndGet();
+        Thread thread = Thread.currentThread();
+        inFlight.put(thread, httpget);
+        long start = Metrics.DOWNLOAD.start(); // Stopped however the request ends, failures take time too.
+        try {
+            return execute(httpget, url, v, ret);
+        }
+        finally {
+            inFlight.remove(thread, httpget);
+            Metrics.DOWNLOAD.stop(start);
+        }
+    }
+
+    // Abort the request thread is in the middle of, if any. Its get() fails with an IOException.
+    public void abort(Thread thread) {
+        HttpGet httpget = inFlight.get(thread);
+        if (httpget != null)
+            httpget.abort();
+    }
+
+    private Response execute(HttpGet httpget, String url, Validators v, Response ret) throws IOException {
+        HttpResponse response;
+        try {
+            response = httpclient.execute(httpget);
+        }
+        catch (IOException e) {
+            httpget.abort();
+            throw e;
+        }
+
+        HttpEntity entity = response.getEntity();
+        int status = response.getStatusLine().getStatusCode();
+        try {
+            if (status == HttpStatus.SC_NOT_MODIFIED && v != null) {
+                notModified.incrementAndGet();
+                ret.notModified = true;
+                return ret;
+            }
+            if (status != HttpStatus.SC_OK)
+                throw new IOException("HTTP " + status);
+            if (entity == null)
+                throw new IOException("Empty response");
+
+            readBody(entity, ret);
+            validators.put(url, new Validators(headerValue(response, "ETag"), headerValue(response, "Last-Modified")));
+        }
+        finally {
+
+            // Always drain, otherwise the connection can't go back into the pool.
+            if (entity != null)
+                entity.consumeContent();
+        }
+        return ret;
+    }
+
+    private void readBody(HttpEntity entity, Response ret) throws IOException {
+        CountingInputStream wire = new CountingInputStream(entity.getContent());
+        Header encoding = entity.getContentEncoding();
+        InputStream is = (encoding != null && encoding.getValue().toLowerCase().contains("gzip")) ? new GZIPInputStream(wire) : wire;
+        try {
+            int read;
+            while ((read = is.read(ret.body, ret.length, ret.body.length - ret.length)) != -1) {
+                ret.length += read;
+                if (ret.length == ret.body.length) {
+                    byte[] grown = new byte[ret.body.length * 2];
+                    System.arraycopy(ret.body, 0, grown, 0, ret.length);
+                    ret.body = grown;
+                }
+            }
+        }
+        finally {
+            is.close();
+            bytesTransferred.addAndGet(wire.count);
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header h = response.getFirstHeader(name);
+        return h != null ? h.getValue() : null;
+    }
+
+    // Drop pooled connections the server has most likely closed already, polls are minutes apart.
+    public void closeIdleConnections() {
+        httpclient.getConnectionManager().closeExpiredConnections();
+        httpclient.getConnectionManager().closeIdleConnections(IDLE_CONNECTION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        httpclient.getConnectionManager().shutdown();
+    }
+
+    public long getRequests() { return requests.get(); }
+    public long getNotModified() { return notModified.get(); }
+    public long getBytesTransferred() { return bytesTransferred.get(); }
+    public long getConnectionsOpened() { return connectionsOpened.get(); }
+
+    private static class CountingInputStream extends InputStream {
+        private final InputStream in;
+        long count;
+
+        CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
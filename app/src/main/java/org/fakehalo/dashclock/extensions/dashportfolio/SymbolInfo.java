@@ -0,0 +1,9 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+// One symbol's quote for the day. Plain Java on purpose, everything but the extension itself works on these.
+public class SymbolInfo {
+    public String Symbol;
+    public double Change;
+    public double Percent;
+    public boolean Error;
+}
@@ -0,0 +1,125 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Single pass ordering of symbols for display. Sort keys are precomputed into a primitive array and compared with
+// Double.compare, ties fall back to alphabetical. With a limit only the top entries are selected and fully ordered.
+// Not thread-safe, the scratch arrays are reused between calls.
+public class SymbolOrdering {
+    public static final String ORDER_ALPHA = "alpha";
+    public static final String ORDER_PERCENT = "percent"; // Biggest percent gain first.
+    public static final String ORDER_PERCENT_REVERSE = "percent_reverse"; // Biggest percent loss first.
+    public static final String ORDER_PRICE = "price"; // Biggest price gain first.
+    public static final String ORDER_PRICE_REVERSE = "price_reverse"; // Biggest price loss first.
+
+    private SymbolInfo[] items = new SymbolInfo[0];
+    private double[] keys = new double[0];
+    private int[] index = new int[0];
+    private int[] scratch = new int[0];
+    private boolean keyed, reverse;
+
+    // Order quotes by symOrder (alphabetical if unknown), optionally reversed, keeping the first limit. (0 = all)
+    public List<SymbolInfo> order(List<SymbolInfo> quotes, String symOrder, boolean reverseMode, int limit) {
+        int n = quotes.size();
+        ensureCapacity(n);
+        boolean percent = ORDER_PERCENT.equals(symOrder) || ORDER_PERCENT_REVERSE.equals(symOrder);
+        boolean price = ORDER_PRICE.equals(symOrder) || ORDER_PRICE_REVERSE.equals(symOrder);
+        boolean descending = ORDER_PERCENT.equals(symOrder) || ORDER_PRICE.equals(symOrder);
+        keyed = percent || price;
+        reverse = reverseMode;
+
+        // Keys ascend, so negate for the "biggest first" orders. (+ 0.0 folds -0.0 into 0.0)
+        for (int i = 0; i < n; i++) {
+            SymbolInfo si = quotes.get(i);
+            items[i] = si;
+            index[i] = i;
+            if (keyed) {
+                double v = percent ? si.Percent : si.Change;
+                keys[i] = (descending ? -v : v) + 0.0;
+            }
+        }
+
+        int count = n;
+        if (limit > 0 && limit < n) {
+            selectTop(n, limit);
+            count = limit;
+        }
+        sort(0, count);
+
+        List<SymbolInfo> ret = new ArrayList<SymbolInfo>(count);
+        for (int i = 0; i < count; i++)
+            ret.add(items[index[i]]);
+
+        // Don't hold on to the caller's objects.
+        for (int i = 0; i < n; i++)
+            items[i] = null;
+        return ret;
+    }
+
+    private void ensureCapacity(int n) {
+        if (items.length >= n)
+            return;
+        int size = Math.max(n, items.length * 2);
+        items = new SymbolInfo[size];
+        keys = new double[size];
+        index = new int[size];
+        scratch = new int[size];
+    }
+
+    private int compare(int a, int b) {
+        int c = 0;
+        if (keyed)
+            c = Double.compare(keys[a], keys[b]);
+        if (c == 0)
+            c = items[a].Symbol.compareTo(items[b].Symbol);
+        return reverse ? -c : c;
+    }
+
+    // Move the limit smallest entries into index[0..limit) (unordered) using a max-heap of size limit. O(n log limit)
+    private void selectTop(int n, int limit) {
+        for (int i = limit / 2 - 1; i >= 0; i--)
+            siftDown(i, limit);
+        for (int i = limit; i < n; i++) {
+            if (compare(index[i], index[0]) < 0) {
+                index[0] = index[i];
+                siftDown(0, limit);
+            }
+        }
+    }
+
+    private void siftDown(int i, int size) {
+        int v = index[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && compare(index[child + 1], index[child]) > 0)
+                child++;
+            if (compare(index[child], v) <= 0)
+                break;
+            index[i] = index[child];
+            i = child;
+        }
+        index[i] = v;
+    }
+
+    // Merge sort of index[from..to), stable and O(n log n) worst case.
+    private void sort(int from, int to) {
+        if (to - from < 2)
+            return;
+        int mid = (from + to) >>> 1;
+        sort(from, mid);
+        sort(mid, to);
+        if (compare(index[mid - 1], index[mid]) <= 0)
+            return; // Already in order.
+        System.arraycopy(index, from, scratch, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)
+            index[k++] = compare(scratch[j], scratch[i]) < 0 ? scratch[j++] : scratch[i++];
+        while (i < mid)
+            index[k++] = scratch[i++];
+        while (j < to)
+            index[k++] = scratch[j++];
+    }
+}
@@ -0,0 +1,85 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Turns free-form symbol text ("aapl, goog;T  spy") into a sorted, de-duplicated, upper case symbol set.
+// Results are cached by the raw input, so re-normalizing an unchanged preference is a map lookup. Thread-safe.
+public class SymbolSetNormalizer {
+    private static final Pattern SYMBOL_PATTERN = Pattern.compile("[A-Za-z0-9.^-]+");
+    private static final int CACHE_SIZE = 16; // A handful of distinct preference strings are live at any time.
+
+    private final String exempt; // Never part of a set. (pseudo-symbols)
+    private final LinkedHashMap<String, CachedSet> cache = new LinkedHashMap<String, CachedSet>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSet> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static class CachedSet {
+        final String[] symbols;
+        String delimiter; // Last join, the same raw string is almost always joined the same way.
+        String joined;
+        CachedSet(String[] symbols) {
+            this.symbols = symbols;
+        }
+    }
+
+    public SymbolSetNormalizer(String exempt) {
+        this.exempt = exempt;
+    }
+
+    // Sorted unique symbols, keeping the first limit found in the input. (0 = unlimited)
+    // The returned array is shared with the cache, don't modify it.
+    public synchronized String[] normalize(String symsIn, int limit) {
+        return entry(symsIn, limit).symbols;
+    }
+
+    // Same as above joined with delimiter, empty if there are no symbols.
+    public synchronized String normalize(String symsIn, String delimiter, int limit) {
+        CachedSet e = entry(symsIn, limit);
+        if (!delimiter.equals(e.delimiter)) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < e.symbols.length; i++) {
+                if (i > 0)
+                    sb.append(delimiter);
+                sb.append(e.symbols[i]);
+            }
+            e.delimiter = delimiter;
+            e.joined = sb.toString();
+        }
+        return e.joined;
+    }
+
+    private CachedSet entry(String symsIn, int limit) {
+        String key = limit + ":" + symsIn;
+        CachedSet e = cache.get(key);
+        if (e == null) {
+            e = new CachedSet(parse(symsIn, limit));
+            cache.put(key, e);
+        }
+        return e;
+    }
+
+    private String[] parse(String symsIn, int limit) {
+        HashSet<String> seen = new HashSet<String>();
+        Matcher m = SYMBOL_PATTERN.matcher(symsIn);
+        while (m.find()) {
+            String sym = m.group().toUpperCase().intern(); // Canonical instance, shared by every set containing it.
+            if (sym.equals(exempt) || !seen.add(sym))
+                continue;
+
+            // 0 = Unlimited.
+            if (limit > 0 && seen.size() >= limit)
+                break;
+        }
+        String[] ret = seen.toArray(new String[seen.size()]);
+        Arrays.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,93 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Runs update work (network fetches) on one background thread instead of the dashclock callback. A request made while
+// another is still queued replaces it, so a burst of update reasons becomes one run. Every request starts a new
+// generation, a run that finishes after a newer request (or cancel()) must drop its result instead of publishing it.
+public class UpdateCoordinator {
+
+    public interface Task {
+        // Runs on the worker thread, check isCurrent(generation) before publishing anything.
+        void run(long generation);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "UpdateCoordinator");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private Task pending = null; // Requested, not started yet.
+    private boolean draining = false; // The worker has been handed drainTask and hasn't finished it.
+    private long generation = 0; // Of the latest request.
+    private long requests, coalesced, runs;
+
+    // Queue task, replacing any task that hasn't started yet. (returns the new generation)
+    public synchronized long request(Task task) {
+        requests++;
+        if (pending != null)
+            coalesced++;
+        pending = task;
+        generation++;
+        if (!draining) {
+            draining = true;
+            executor.execute(drainTask);
+        }
+        return generation;
+    }
+
+    // Drop the queued task and invalidate the running one, if any.
+    public synchronized void cancel() {
+        pending = null;
+        generation++;
+    }
+
+    public synchronized boolean isCurrent(long generation) {
+        return generation == this.generation;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    public synchronized long getRequests() { return requests; }
+    // Requests merged into a later one before they ran.
+    public synchronized long getCoalesced() { return coalesced; }
+    public synchronized long getRuns() { return runs; }
+
+    private void drain() {
+        while (true) {
+            Task task;
+            long gen;
+            synchronized (this) {
+                task = pending;
+                gen = generation;
+                pending = null;
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+                runs++;
+            }
+            try {
+                task.run(gen);
+            }
+            catch (RuntimeException e) {
+                // Tasks handle their own errors, an escaped one just must not stall the worker.
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.PortfolioAggregator;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ^MYINDEX upkeep: feeding every quote (a full fetch) and a single changed quote, which should not depend on size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregateBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int symbolCount;
+
+    @Param({ "0", "0.05", "0.5" })
+    public double errorRatio;
+
+    private final PortfolioAggregator aggregator = new PortfolioAggregator();
+    private List<SymbolInfo> quotes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        quotes = Payloads.quotes(Payloads.synthetic(symbolCount, errorRatio));
+        String[] symbols = Payloads.symbols(quotes);
+        StringBuilder holdings = new StringBuilder();
+        for (int i = 0; i < symbols.length; i += 2)
+            holdings.append(symbols[i]).append('=').append(i % 7 + 1).append(", ");
+        aggregator.configure(symbols, holdings.toString());
+        for (SymbolInfo si : quotes)
+            aggregator.update(si);
+    }
+
+    @Benchmark
+    public double updateAll() {
+        for (SymbolInfo si : quotes)
+            aggregator.update(si);
+        return aggregator.getPercent();
+    }
+
+    @Benchmark
+    public double updateOne() {
+        SymbolInfo si = quotes.get(next);
+        next = (next + 1) % quotes.size();
+        si.Change = -si.Change;
+        si.Percent = -si.Percent;
+        aggregator.update(si);
+        return aggregator.getPercent();
+    }
+}
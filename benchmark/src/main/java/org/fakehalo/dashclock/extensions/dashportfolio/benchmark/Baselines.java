@@ -0,0 +1,108 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// The code the optimized classes replaced, kept as it was in the extension so the benchmarks have something to beat
+// and the tests have something to agree with.
+public final class Baselines {
+    private Baselines() {
+    }
+
+    // readLine, split and Double.parseDouble, a new SymbolInfo per row. (before QuoteCsvParser)
+    public static List<SymbolInfo> parseSplit(InputStream is) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        List<SymbolInfo> symbolInfo = new ArrayList<SymbolInfo>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] lineParts = line.split("[^A-Za-z0-9.^_-]+"); // Hokey logic to parse .csv
+            if(lineParts.length >= 4) {
+                SymbolInfo si = new SymbolInfo();
+                si.Symbol = lineParts[1];
+                si.Error = true;
+                try {
+                    si.Change = Double.parseDouble(lineParts[2]);
+                    si.Percent = Double.parseDouble(lineParts[3]);
+                    si.Error = false;
+                }
+                catch (Exception e) {
+                    si.Change = 0;
+                    si.Percent = 0;
+                }
+                symbolInfo.add(si);
+            }
+        }
+        return symbolInfo;
+    }
+
+    // Alphabetical sort, a second (stable) sort on the order's key, then reverse, trimmed to limit. (before SymbolOrdering)
+    public static List<SymbolInfo> order(List<SymbolInfo> quotes, String symOrder, boolean reverseMode, int limit) {
+        List<SymbolInfo> symbolInfo = new ArrayList<SymbolInfo>(quotes);
+
+        // Alphabetical order base for all. (default)
+        Collections.sort(symbolInfo, new SymbolInfoComparator(null));
+
+        // Apply secondary ordering, if applicable.
+        if(symOrder != null && !symOrder.isEmpty())
+            Collections.sort(symbolInfo, new SymbolInfoComparator(symOrder));
+
+        if(reverseMode)
+            Collections.reverse(symbolInfo);
+        if(limit > 0 && limit < symbolInfo.size())
+            symbolInfo = new ArrayList<SymbolInfo>(symbolInfo.subList(0, limit));
+        return symbolInfo;
+    }
+
+    // String.format per symbol onto a growing String, every symbol, no budget. (before BodyRenderer)
+    public static String render(List<SymbolInfo> symbolInfo, boolean showPrice) {
+        String bodyLine = "";
+        for (SymbolInfo si : symbolInfo) {
+            String symbolData;
+            if(si.Error)
+                symbolData = "ERR";
+            else if(showPrice)
+                symbolData = String.format("%s%.2f", (si.Change > 0 ? "+" : ""), si.Change);
+            else // Show percentage.
+                symbolData = String.format("%s%.2f%%", (si.Percent > 0 ? "+" : ""), si.Percent);
+
+            bodyLine += String.format("%s[%s] ", si.Symbol, symbolData);
+        }
+        return bodyLine;
+    }
+
+    // Status line percent. (before BodyRenderer.formatPercent)
+    public static String formatPercent(SymbolInfo si) {
+        return (si.Error ? "ERR" : String.format("%s%.2f%%", (si.Percent > 0 ? "+" : ""), si.Percent));
+    }
+
+    // Various order by logic for symbols. Keys are compared as truncated int hundredths.
+    public static class SymbolInfoComparator implements Comparator<SymbolInfo> {
+        private String symOrder = null;
+        public SymbolInfoComparator(String order) {
+            symOrder = order;
+        }
+        public int compare(SymbolInfo s1, SymbolInfo s2) {
+            if(symOrder != null && !symOrder.isEmpty()) {
+                if (symOrder.equals("percent"))
+                    return (int)((s2.Percent*100) - (s1.Percent*100));
+                else if (symOrder.equals("percent_reverse"))
+                    return (int)((s1.Percent*100) - (s2.Percent*100));
+                else if (symOrder.equals("price"))
+                    return (int)((s2.Change*100) - (s1.Change*100));
+                else if (symOrder.equals("price_reverse"))
+                    return (int)((s1.Change*100) - (s2.Change*100));
+            }
+
+            // Default to alphabetical if not matched.
+            return s1.Symbol.compareTo(s2.Symbol);
+        }
+    }
+}
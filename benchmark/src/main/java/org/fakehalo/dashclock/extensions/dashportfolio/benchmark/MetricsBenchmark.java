@@ -0,0 +1,74 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.BodyRenderer;
+import org.fakehalo.dashclock.extensions.dashportfolio.Metrics;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What the debug metrics cost with the setting off and on: a bare counter, a bare timer, and a 100 symbol render
+// timed the way PortfolioExtension times it. Metrics are process wide, so this is Scope.Benchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({ "false", "true" })
+    public boolean enabled;
+
+    private final BodyRenderer renderer = new BodyRenderer();
+    private List<SymbolInfo> quotes;
+
+    @Setup
+    public void setup() {
+        quotes = Payloads.quotes(Payloads.synthetic(100, 0.05));
+        Metrics.setEnabled(enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Benchmark
+    public long counter() {
+        Metrics.ROWS_PARSED.increment();
+        return Metrics.ROWS_PARSED.get();
+    }
+
+    @Benchmark
+    public long timer() {
+        long start = Metrics.PARSE.start();
+        Metrics.PARSE.stop(start);
+        return start;
+    }
+
+    @Benchmark
+    public String render() {
+        return renderer.renderBody(quotes, false, 1000, 0);
+    }
+
+    @Benchmark
+    public String timedRender() {
+        long start = Metrics.RENDER.start();
+        String body = renderer.renderBody(quotes, false, 1000, 0);
+        Metrics.RENDER.stop(start);
+        return body;
+    }
+}
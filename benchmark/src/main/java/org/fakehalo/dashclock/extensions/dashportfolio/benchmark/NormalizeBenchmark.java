@@ -0,0 +1,56 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.FakeQuoteProvider;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolSetNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Symbol preference normalization, a fresh normalizer every call (first sight of a preference) and a cached one.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizeBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int symbolCount;
+
+    private String pref;
+    private final SymbolSetNormalizer cached = new SymbolSetNormalizer("^MYINDEX");
+
+    // Lower case, mixed delimiters and a duplicate every tenth symbol, like hand typed preferences.
+    @Setup
+    public void setup() {
+        String[] symbols = FakeQuoteProvider.syntheticSymbols(symbolCount);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < symbols.length; i++) {
+            sb.append(i % 3 == 0 ? symbols[i].toLowerCase() : symbols[i]).append(i % 2 == 0 ? ", " : ";");
+            if (i % 10 == 0)
+                sb.append(symbols[i / 2]).append(' ');
+        }
+        pref = sb.toString();
+    }
+
+    @Benchmark
+    public String[] uncached() {
+        return new SymbolSetNormalizer("^MYINDEX").normalize(pref, 0);
+    }
+
+    @Benchmark
+    public String joinedCached() {
+        return cached.normalize(pref, ",", 0);
+    }
+}
@@ -0,0 +1,55 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolOrdering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Display ordering of a fetch's quotes, full sorts and top N selection, against the comparator chain it replaced.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderingBenchmark {
+    @Param({ "10", "100", "1000", "5000", "10000" })
+    public int symbolCount;
+
+    @Param({ SymbolOrdering.ORDER_ALPHA, SymbolOrdering.ORDER_PERCENT, SymbolOrdering.ORDER_PRICE_REVERSE })
+    public String order;
+
+    @Param({ "0", "10" })
+    public int limit;
+
+    private final SymbolOrdering ordering = new SymbolOrdering();
+    private List<SymbolInfo> quotes;
+
+    @Setup
+    public void setup() {
+        quotes = Payloads.quotes(Payloads.synthetic(symbolCount, 0.05));
+    }
+
+    @Benchmark
+    public List<SymbolInfo> order() {
+        return ordering.order(quotes, order, false, limit);
+    }
+
+    @Benchmark
+    public List<SymbolInfo> orderBaseline() {
+        return Baselines.order(quotes, order, false, limit);
+    }
+}
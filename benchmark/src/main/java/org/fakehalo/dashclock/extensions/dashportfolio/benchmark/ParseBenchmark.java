@@ -0,0 +1,62 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteCsvParser;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// QuoteCsvParser over a whole response, from memory (the transport's path) and as a stream, against the split based
+// parsing it replaced.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int symbolCount;
+
+    @Param({ "0", "0.05", "0.5" })
+    public double errorRatio;
+
+    private byte[] payload;
+    private final QuoteCsvParser parser = new QuoteCsvParser();
+    private final List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+
+    @Setup
+    public void setup() {
+        payload = Payloads.synthetic(symbolCount, errorRatio);
+    }
+
+    @Benchmark
+    public int parseBytes() {
+        return parser.parse(payload, payload.length, slots);
+    }
+
+    @Benchmark
+    public int parseStream() throws IOException {
+        return parser.parse(new ByteArrayInputStream(payload), slots);
+    }
+
+    @Benchmark
+    public List<SymbolInfo> parseSplitBaseline() throws IOException {
+        return Baselines.parseSplit(new ByteArrayInputStream(payload));
+    }
+}
@@ -0,0 +1,76 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.FakeQuoteProvider;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteCsvParser;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Finance .csv (f=sc6p2) payloads for the benchmarks, either synthetic in the feed's wire format or replayed from the
+// corpus in src/main/resources/corpus. Everything is seeded so runs are comparable across releases.
+public final class Payloads {
+    public static final long SEED = 20140422;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private Payloads() {
+    }
+
+    // count symbols worth of rows, errorRatio of them "N/A" like the feed returns for unknown symbols.
+    public static byte[] synthetic(int count, double errorRatio) {
+        String[] symbols = FakeQuoteProvider.syntheticSymbols(count);
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(count * 28);
+        for (String symbol : symbols) {
+            sb.append('"').append(symbol).append("\",");
+            if (random.nextDouble() < errorRatio)
+                sb.append("N/A,\"N/A\"");
+            else {
+                double percent = Math.round(random.nextGaussian() * 150) / 100.0;
+                double change = Math.round(percent * (10 + random.nextDouble() * 490)) / 100.0;
+                sb.append(String.format(Locale.US, "%+.2f,\"%+.2f%%\"", change, percent));
+            }
+            sb.append("\r\n");
+        }
+        return sb.toString().getBytes(ASCII);
+    }
+
+    // A recorded response from the corpus.
+    public static byte[] corpus(String name) throws IOException {
+        InputStream is = Payloads.class.getResourceAsStream("/corpus/" + name);
+        if (is == null)
+            throw new IOException("No corpus file " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    // Parsed payload, one new SymbolInfo per row.
+    public static List<SymbolInfo> quotes(byte[] payload) {
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        int rows = new QuoteCsvParser().parse(payload, payload.length, slots);
+        return new ArrayList<SymbolInfo>(slots.subList(0, rows));
+    }
+
+    // Symbols of a parsed payload, in row order.
+    public static String[] symbols(List<SymbolInfo> quotes) {
+        String[] ret = new String[quotes.size()];
+        for (int i = 0; i < ret.length; i++)
+            ret[i] = quotes.get(i).Symbol;
+        return ret;
+    }
+}
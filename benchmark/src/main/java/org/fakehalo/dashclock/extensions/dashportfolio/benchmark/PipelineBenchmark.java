@@ -0,0 +1,101 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.BodyRenderer;
+import org.fakehalo.dashclock.extensions.dashportfolio.FakeQuoteProvider;
+import org.fakehalo.dashclock.extensions.dashportfolio.PortfolioAggregator;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteBatchFetcher;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteCache;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteCsvParser;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolOrdering;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolSetNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One update the way PortfolioExtension does it, minus Android: normalize the preference, parse the response, record
+// to the cache and ^MYINDEX, order and render. fetched() goes through the batch fetcher with a zero latency provider
+// instead, so batching and thread hand-off show up too.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int symbolCount;
+
+    @Param({ "0", "0.05", "0.5" })
+    public double errorRatio;
+
+    private String pref;
+    private byte[] payload;
+    private long now = Payloads.SEED;
+
+    private final SymbolSetNormalizer normalizer = new SymbolSetNormalizer("^MYINDEX");
+    private final QuoteCsvParser parser = new QuoteCsvParser();
+    private final List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+    private final QuoteCache cache = new QuoteCache();
+    private final PortfolioAggregator aggregator = new PortfolioAggregator();
+    private final SymbolOrdering ordering = new SymbolOrdering();
+    private final BodyRenderer renderer = new BodyRenderer();
+    private final QuoteBatchFetcher fetcher = new QuoteBatchFetcher();
+    private FakeQuoteProvider provider;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.synthetic(symbolCount, errorRatio);
+        StringBuilder sb = new StringBuilder();
+        for (String symbol : Payloads.symbols(Payloads.quotes(payload)))
+            sb.append(symbol).append(", ");
+        pref = sb.toString();
+        provider = new FakeQuoteProvider(Payloads.SEED, 0, errorRatio, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fetcher.shutdown();
+    }
+
+    @Benchmark
+    public String parsed() {
+        String[] symbols = normalizer.normalize(pref, 0);
+        aggregator.configure(symbols, null);
+        int rows = parser.parse(payload, payload.length, slots);
+        return record(symbols, slots.subList(0, rows));
+    }
+
+    @Benchmark
+    public String fetched() throws IOException {
+        String[] symbols = normalizer.normalize(pref, 0);
+        aggregator.configure(symbols, null);
+        provider.advance();
+        return record(symbols, fetcher.fetch(provider, symbols));
+    }
+
+    private String record(String[] symbols, List<SymbolInfo> quotes) {
+        now += 60000; // Every quote a fresh value, so changed quotes reach the aggregator.
+        for (SymbolInfo si : quotes) {
+            if (cache.put(si, now))
+                aggregator.update(si);
+        }
+        List<SymbolInfo> ordered = ordering.order(cache.get(symbols), SymbolOrdering.ORDER_PERCENT, false, 0);
+        return renderer.renderBody(ordered, false, 1000, 0) + aggregator.getPercent();
+    }
+}
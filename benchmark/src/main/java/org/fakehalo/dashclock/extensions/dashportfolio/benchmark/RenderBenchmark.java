@@ -0,0 +1,73 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.BodyRenderer;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteHistory;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+// Expanded body rendering in each display mode, with a day of history behind the trend modes. Budget 0 renders
+// everything, which is what the old String.format loop (renderBaseline) always did.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    private static final long DAY_START = 1398173400000L; // 2014-04-22 09:30 New York.
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int symbolCount;
+
+    @Param({ BodyRenderer.MODE_QUOTE, BodyRenderer.MODE_TREND, BodyRenderer.MODE_SPARKLINE })
+    public String mode;
+
+    @Param({ "0", "1000" })
+    public int budget;
+
+    private final BodyRenderer renderer = new BodyRenderer();
+    private final QuoteHistory history = new QuoteHistory(TimeZone.getTimeZone("America/New_York"));
+    private List<SymbolInfo> quotes;
+
+    @Setup
+    public void setup() {
+        quotes = Payloads.quotes(Payloads.synthetic(symbolCount, 0.05));
+        SymbolInfo moving = new SymbolInfo();
+        for (int sample = 0; sample < QuoteHistory.CAPACITY; sample++) {
+            for (int i = 0; i < quotes.size(); i++) {
+                SymbolInfo si = quotes.get(i);
+                moving.Symbol = si.Symbol;
+                moving.Error = si.Error;
+                moving.Percent = si.Percent + Math.sin(sample * 0.1 + i) * 0.5; // Wander towards the final quote.
+                moving.Change = si.Change * moving.Percent / (si.Percent != 0 ? si.Percent : 1);
+                history.record(moving, DAY_START + sample * QuoteHistory.MIN_SPACING_MS);
+            }
+        }
+    }
+
+    @Benchmark
+    public String render() {
+        return renderer.renderBody(quotes, false, mode, history, budget > 0 ? budget : Integer.MAX_VALUE, 0);
+    }
+
+    // The old String.format loop only had the quote mode and no budget, compare against mode=quote budget=0.
+    @Benchmark
+    public String renderBaseline() {
+        return Baselines.render(quotes, false);
+    }
+}
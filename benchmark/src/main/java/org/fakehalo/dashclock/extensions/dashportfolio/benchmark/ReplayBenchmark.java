@@ -0,0 +1,54 @@
+package org.fakehalo.dashclock.extensions.dashportfolio.benchmark;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.BodyRenderer;
+import org.fakehalo.dashclock.extensions.dashportfolio.QuoteCsvParser;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolInfo;
+import org.fakehalo.dashclock.extensions.dashportfolio.SymbolOrdering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parse, order and render of responses from the corpus (src/main/resources/corpus), the odd rows real responses
+// contain (N/A, escaped quotes, blank lines) included. New corpus files need adding to the file parameter.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+    @Param({ "default-portfolio.csv", "indices.csv", "unknown-symbols.csv" })
+    public String file;
+
+    private byte[] payload;
+    private final QuoteCsvParser parser = new QuoteCsvParser();
+    private final List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+    private final SymbolOrdering ordering = new SymbolOrdering();
+    private final BodyRenderer renderer = new BodyRenderer();
+
+    @Setup
+    public void setup() throws IOException {
+        payload = Payloads.corpus(file);
+    }
+
+    @Benchmark
+    public String replay() {
+        int rows = parser.parse(payload, payload.length, slots);
+        List<SymbolInfo> ordered = ordering.order(slots.subList(0, rows), SymbolOrdering.ORDER_PERCENT, false, 0);
+        return renderer.renderBody(ordered, false, 1000, 0);
+    }
+}
@@ -0,0 +1,207 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AlertEngineTest {
+    private static final long MINUTE = 60 * 1000L;
+
+    private static List<AlertEngine.Alert> evaluate(AlertEngine engine, String symbol, double percent, long now) {
+        List<AlertEngine.Alert> fired = new ArrayList<AlertEngine.Alert>();
+        engine.evaluate(quote(symbol, percent), now, fired);
+        return fired;
+    }
+
+    @Test
+    public void firesOncePerCrossing() {
+        AlertEngine engine = new AlertEngine();
+        engine.setCooldown(0);
+        engine.configure("AAPL>2%, AAPL<-1%");
+        assertEquals(2, engine.getRuleCount());
+        assertEquals(0, evaluate(engine, "AAPL", 1, 0).size());
+        assertEquals(1, evaluate(engine, "AAPL", 2.5, MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1.9, 2 * MINUTE).size()); // Inside the hysteresis band.
+        assertEquals(0, evaluate(engine, "AAPL", 2.6, 3 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1.5, 4 * MINUTE).size()); // Re-armed.
+        assertEquals(1, evaluate(engine, "AAPL", 2.1, 5 * MINUTE).size());
+        List<AlertEngine.Alert> below = evaluate(engine, "AAPL", -1.5, 6 * MINUTE);
+        assertEquals(1, below.size());
+        assertEquals(-1, below.get(0).rule.threshold, 0);
+    }
+
+    // A restarted engine seeded with the restored quote stays quiet about rules that quote is already past.
+    @Test
+    public void seededRulesDontFireAgainAfterRestart() {
+        String rules = "AAPL>2%, AAPL>5%, AAPL<-1%, GOOG<-1%";
+        AlertEngine before = new AlertEngine();
+        before.configure(rules);
+        assertEquals(1, evaluate(before, "AAPL", 3, 0).size());
+        assertEquals(1, evaluate(before, "GOOG", -2, 0).size());
+
+        AlertEngine unseeded = new AlertEngine();
+        unseeded.configure(rules);
+        assertEquals(1, evaluate(unseeded, "AAPL", 3.1, MINUTE).size()); // The repeat this is about.
+
+        AlertEngine restarted = new AlertEngine();
+        restarted.setCooldown(0);
+        restarted.configure(rules);
+        restarted.seed(quote("AAPL", 3));
+        restarted.seed(quote("GOOG", -2));
+        assertEquals(0, evaluate(restarted, "AAPL", 3.1, MINUTE).size());
+        assertEquals(0, evaluate(restarted, "GOOG", -2.5, MINUTE).size());
+        assertEquals(1, evaluate(restarted, "AAPL", 5.5, 2 * MINUTE).size()); // Not past it when restored.
+        assertEquals(0, evaluate(restarted, "AAPL", 1, 3 * MINUTE).size());
+        assertEquals(1, evaluate(restarted, "AAPL", 2.5, 4 * MINUTE).size()); // Backed off and crossed again.
+
+        // Only the first value counts, later seeds don't reset anything.
+        restarted.seed(quote("AAPL", 10));
+        assertEquals(1, evaluate(restarted, "AAPL", 5.5, 5 * MINUTE).size());
+    }
+
+    @Test
+    public void editingRulesKeepsTheUnchangedOnes() {
+        AlertEngine engine = new AlertEngine();
+        engine.setCooldown(0);
+        engine.configure("AAPL>2%, AAPL<-1%");
+        assertEquals(1, evaluate(engine, "AAPL", 3, 0).size());
+
+        // Same rules in another order, one removed and two added.
+        engine.configure("GOOG<-1%, AAPL>2.5%, AAPL>2%");
+        assertEquals(0, evaluate(engine, "AAPL", 3.1, MINUTE).size()); // Neither the old rule nor the new one it's past.
+        assertEquals(0, evaluate(engine, "AAPL", 1, 2 * MINUTE).size());
+        assertEquals(2, evaluate(engine, "AAPL", 2.6, 3 * MINUTE).size()); // Both on the next real crossing.
+        assertEquals(1, evaluate(engine, "GOOG", -2, 4 * MINUTE).size()); // A new symbol starts fresh.
+    }
+
+    // A crossing within the cooldown isn't lost, it fires once the cooldown is over if the value is still past.
+    @Test
+    public void crossingDuringCooldownIsDeferred() {
+        final long T = 1000 * MINUTE; // Fired at 0 would read as never fired.
+        AlertEngine engine = new AlertEngine();
+        engine.setCooldown(30 * MINUTE);
+        engine.configure("AAPL>2%");
+        assertEquals(1, evaluate(engine, "AAPL", 2.5, T).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1, T + 5 * MINUTE).size()); // Re-armed.
+        assertEquals(0, evaluate(engine, "AAPL", 2.5, T + 10 * MINUTE).size()); // Crossed, but within the cooldown.
+        assertEquals(0, evaluate(engine, "AAPL", 2.6, T + 20 * MINUTE).size());
+        List<AlertEngine.Alert> fired = evaluate(engine, "AAPL", 2.7, T + 31 * MINUTE);
+        assertEquals(1, fired.size());
+        assertEquals(2.7, fired.get(0).value, 0);
+        assertEquals(0, evaluate(engine, "AAPL", 2.8, T + 70 * MINUTE).size()); // Only once.
+
+        // Backed off before the cooldown ended, nothing to report any more.
+        assertEquals(0, evaluate(engine, "AAPL", 1, T + 75 * MINUTE).size());
+        assertEquals(1, evaluate(engine, "AAPL", 2.5, T + 80 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1, T + 85 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 2.5, T + 90 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1.95, T + 95 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1.9, T + 120 * MINUTE).size());
+
+        // Deferral survives editing the rules.
+        assertEquals(1, evaluate(engine, "AAPL", 2.1, T + 121 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 1, T + 122 * MINUTE).size());
+        assertEquals(0, evaluate(engine, "AAPL", 2.2, T + 123 * MINUTE).size());
+        engine.configure("AAPL>2%, SPY>1%");
+        assertEquals(1, evaluate(engine, "AAPL", 2.3, T + 152 * MINUTE).size());
+    }
+
+    // count AAPL rules with thresholds in [from, to), ops alternating between the ones given.
+    private static String rules(int count, double from, double to, String... ops) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(count);
+        for (int i = 0; i < count; i++) {
+            double threshold = Math.round((from + random.nextDouble() * (to - from)) * 100) / 100.0;
+            sb.append("AAPL").append(ops[i % ops.length]).append(threshold).append("%, ");
+        }
+        return sb.toString();
+    }
+
+    // Rules visited equals the thresholds and re-arm levels actually crossed, however many rules there are.
+    @Test
+    public void costFollowsMovementNotRuleCount() {
+        for (int count : new int[] { 10, 1000, 10000 }) {
+            AlertEngine engine = new AlertEngine();
+
+            // Rules far away from where the quote moves are never looked at.
+            engine.configure(rules(count, 20, 50, ">") + rules(count, -50, -20, "<"));
+            Random random = new Random(2014);
+            double percent = 0;
+            for (int n = 0; n < 10000; n++) {
+                percent = Math.max(-5, Math.min(5, percent + random.nextGaussian() * 0.2));
+                evaluate(engine, "AAPL", percent, n * MINUTE);
+            }
+            assertEquals(0, engine.getRulesVisited());
+        }
+
+        // Rules spread over the range the quote moves in, compared with a scan of every rule.
+        for (int count : new int[] { 10, 1000, 5000 }) {
+            AlertEngine engine = new AlertEngine();
+            engine.configure(rules(count, -5, 5, ">", "<"));
+            List<AlertEngine.Rule> all = new ArrayList<AlertEngine.Rule>();
+            List<AlertEngine.Alert> fired = new ArrayList<AlertEngine.Alert>();
+            engine.evaluate(quote("AAPL", -100), 0, fired);
+            engine.evaluate(quote("AAPL", 100), 0, fired);
+            for (AlertEngine.Alert alert : fired)
+                all.add(alert.rule);
+            assertEquals(count, all.size());
+
+            engine = new AlertEngine();
+            engine.configure(rules(count, -5, 5, ">", "<"));
+            Random random = new Random(2015);
+            double last = Double.NaN, percent = 0;
+            long crossings = 0;
+            for (int n = 0; n < 2000; n++) {
+                percent = Math.round((percent + random.nextGaussian() * 0.1) * 1000) / 1000.0;
+                if (!Double.isNaN(last))
+                    crossings += crossed(all, last, percent);
+                else
+                    crossings += crossedFirst(all, percent);
+                evaluate(engine, "AAPL", percent, n * MINUTE);
+                last = percent;
+            }
+            assertEquals(crossings, engine.getRulesVisited());
+            assertTrue(crossings < 2000L * count / 20); // A scan would visit every rule on every quote.
+        }
+    }
+
+    private static double rearmLevel(AlertEngine.Rule r) {
+        double hysteresis = Math.max(AlertEngine.MIN_HYSTERESIS, Math.abs(r.threshold) * AlertEngine.HYSTERESIS_FRACTION);
+        return r.above ? r.threshold - hysteresis : r.threshold + hysteresis;
+    }
+
+    private static long crossed(List<AlertEngine.Rule> rules, double last, double value) {
+        long ret = 0;
+        for (AlertEngine.Rule r : rules) {
+            double rearm = rearmLevel(r);
+            if (r.above) {
+                if (value < last && rearm > value && rearm <= last)
+                    ret++;
+                if (r.threshold > last && r.threshold <= value)
+                    ret++;
+            }
+            else {
+                if (value > last && rearm >= last && rearm < value)
+                    ret++;
+                if (r.threshold >= value && r.threshold < last)
+                    ret++;
+            }
+        }
+        return ret;
+    }
+
+    private static long crossedFirst(List<AlertEngine.Rule> rules, double value) {
+        long ret = 0;
+        for (AlertEngine.Rule r : rules) {
+            if (r.above ? r.threshold <= value : r.threshold >= value)
+                ret++;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,120 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.benchmark.Baselines;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// BodyRenderer against the String.format loop it replaced, over a seeded corpus of quotes with rounding ties, errors,
+// NaN, negative zero and the odd huge value. With a budget the expected text is the old loop's output cut back to
+// whole symbols, plus the "+N more" suffix.
+public class BodyRendererTest {
+    private static final double[] EDGES = { 0.0, -0.0, 0.004, -0.004, 0.005, -0.005, 1.005, -1.005, 2.675, 0.125,
+            -0.125, 99.995, 1e-9, -1e-9, 999999.994, 1e6, -1e7, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    private final Locale defaultLocale = Locale.getDefault();
+    private final BodyRenderer renderer = new BodyRenderer();
+
+    @After
+    public void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    private static double value(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return EDGES[random.nextInt(EDGES.length)];
+            case 1:
+                return (random.nextInt(20001) - 10000) / 100.0; // Whole cents.
+            case 2:
+                return (random.nextInt(20001) - 10000) / 100.0 + (random.nextBoolean() ? 0.005 : -0.005); // Ties.
+            default:
+                return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(6));
+        }
+    }
+
+    private static List<SymbolInfo> corpus(Random random, int count) {
+        List<SymbolInfo> quotes = new ArrayList<SymbolInfo>(count);
+        for (int i = 0; i < count; i++) {
+            SymbolInfo si = new SymbolInfo();
+            si.Symbol = (i % 7 == 0 ? "^" : "") + "S" + Integer.toString(random.nextInt(100000), 36).toUpperCase();
+            si.Error = random.nextInt(10) == 0;
+            si.Change = si.Error && random.nextBoolean() ? Double.NaN : value(random);
+            si.Percent = si.Error && random.nextBoolean() ? Double.NaN : value(random);
+            quotes.add(si);
+        }
+        return quotes;
+    }
+
+    // The old loop's output for as many whole symbols as fit the budget, leaving room for the suffix unless the
+    // last symbol makes it in.
+    private static String expected(List<SymbolInfo> quotes, boolean showPrice, int budget, int hidden) {
+        int count = quotes.size();
+        int reserve = ("+" + (count + hidden) + " more").length();
+        String body = "";
+        int shown = 0;
+        while (shown < count) {
+            String next = Baselines.render(quotes.subList(0, shown + 1), showPrice);
+            boolean last = shown == count - 1 && hidden == 0;
+            if (next.length() > budget - (last ? 0 : reserve))
+                break;
+            body = next;
+            shown++;
+        }
+        int more = count - shown + hidden;
+        return more > 0 ? body + "+" + more + " more" : body;
+    }
+
+    @Test
+    public void matchesStringFormatLoop() {
+        for (Locale locale : Arrays.asList(Locale.US, Locale.GERMANY, new Locale("ar", "EG"))) {
+            Locale.setDefault(locale);
+            Random random = new Random(2014);
+            for (int run = 0; run < 300; run++) {
+                List<SymbolInfo> quotes = corpus(random, random.nextInt(60));
+                for (boolean showPrice : new boolean[] { false, true }) {
+                    String message = locale + "/" + run + "/" + showPrice;
+                    assertEquals(message, Baselines.render(quotes, showPrice), renderer.renderBody(quotes, showPrice, Integer.MAX_VALUE, 0));
+                }
+                for (SymbolInfo si : quotes)
+                    assertEquals(locale + "/" + si.Percent, Baselines.formatPercent(si), renderer.formatPercent(si));
+            }
+        }
+    }
+
+    @Test
+    public void budgetCutsAtWholeSymbols() {
+        Random random = new Random(2015);
+        for (int run = 0; run < 300; run++) {
+            List<SymbolInfo> quotes = corpus(random, 1 + random.nextInt(80));
+            int budget = random.nextInt(400);
+            int hidden = random.nextInt(3) == 0 ? random.nextInt(20) : 0;
+            for (boolean showPrice : new boolean[] { false, true }) {
+                String message = run + "/" + budget + "/" + hidden + "/" + showPrice;
+                String expected = expected(quotes, showPrice, budget, hidden);
+                String actual = renderer.renderBody(quotes, showPrice, budget, hidden);
+                assertEquals(message, expected, actual);
+                if (!actual.startsWith("+"))
+                    assertTrue(message, actual.length() <= budget); // Only the suffix alone can run over.
+            }
+        }
+    }
+
+    @Test
+    public void negativeZeroKeepsItsSign() {
+        List<SymbolInfo> quotes = Arrays.asList(quote("AAPL", -0.0, -0.0));
+        assertEquals("AAPL[-0.00%] ", Baselines.render(quotes, false));
+        assertEquals(Baselines.render(quotes, false), renderer.renderBody(quotes, false, Integer.MAX_VALUE, 0));
+        assertEquals(Baselines.render(quotes, true), renderer.renderBody(quotes, true, Integer.MAX_VALUE, 0));
+    }
+}
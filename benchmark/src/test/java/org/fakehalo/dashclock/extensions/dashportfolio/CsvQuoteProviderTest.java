@@ -0,0 +1,126 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvQuoteProviderTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String[] SYMBOLS = { "AAPL", "GOOG" };
+
+    // Answers every get() with the body set last, or a 304 when told to and the request was conditional.
+    private static class StubTransport extends QuoteTransport {
+        byte[] body;
+        boolean sendNotModified;
+        int requests, conditionalRequests;
+        private final Response response = new Response();
+
+        @Override
+        public Response get(String url, boolean conditional) throws IOException {
+            requests++;
+            if (conditional)
+                conditionalRequests++;
+            response.notModified = conditional && sendNotModified;
+            response.length = response.notModified ? 0 : body.length;
+            if (!response.notModified) {
+                if (response.body.length < body.length)
+                    response.body = new byte[body.length];
+                System.arraycopy(body, 0, response.body, 0, body.length);
+            }
+            return response;
+        }
+    }
+
+    private StubTransport transport;
+    private CsvQuoteProvider provider;
+
+    @Before
+    public void setUp() {
+        transport = new StubTransport();
+        provider = new CsvQuoteProvider("http://example.com/quotes.csv?s=", transport);
+        Metrics.setEnabled(true);
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        transport.shutdown();
+    }
+
+    private List<SymbolInfo> fetch(String body) throws IOException {
+        transport.body = body.getBytes(ASCII);
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        int rows = provider.fetchQuotes(SYMBOLS, 0, SYMBOLS.length, slots);
+        return slots.subList(0, rows);
+    }
+
+    private static void assertQuote(SymbolInfo si, String symbol, double change, double percent) {
+        assertEquals(symbol, si.Symbol);
+        assertFalse(si.Error);
+        assertEquals(change, si.Change, 0);
+        assertEquals(percent, si.Percent, 0);
+    }
+
+    @Test
+    public void identicalBodySkipsTheParse() throws IOException {
+        String body = "\"AAPL\",+1.25,\"+0.50%\"\n\"GOOG\",-3.00,\"-0.75%\"\n";
+        List<SymbolInfo> first = fetch(body);
+        assertEquals(2, Metrics.ROWS_PARSED.get());
+        assertEquals(0, Metrics.PARSES_SKIPPED.get());
+        first.get(0).Change = 99; // Callers own their slots, the kept rows must not change with them.
+
+        List<SymbolInfo> second = fetch(body);
+        assertEquals(2, Metrics.ROWS_PARSED.get());
+        assertEquals(1, Metrics.PARSES_SKIPPED.get());
+        assertEquals(2, second.size());
+        assertQuote(second.get(0), "AAPL", 1.25, 0.5);
+        assertQuote(second.get(1), "GOOG", -3, -0.75);
+    }
+
+    @Test
+    public void changedBodyIsParsedAgain() throws IOException {
+        fetch("\"AAPL\",+1.25,\"+0.50%\"\n\"GOOG\",-3.00,\"-0.75%\"\n");
+        List<SymbolInfo> quotes = fetch("\"AAPL\",+1.35,\"+0.54%\"\n\"GOOG\",-3.00,\"-0.75%\"\n");
+        assertEquals(4, Metrics.ROWS_PARSED.get());
+        assertEquals(0, Metrics.PARSES_SKIPPED.get());
+        assertQuote(quotes.get(0), "AAPL", 1.35, 0.54);
+
+        // Same length, different bytes.
+        quotes = fetch("\"AAPL\",+1.36,\"+0.54%\"\n\"GOOG\",-3.00,\"-0.75%\"\n");
+        assertEquals(6, Metrics.ROWS_PARSED.get());
+        assertQuote(quotes.get(0), "AAPL", 1.36, 0.54);
+    }
+
+    @Test
+    public void notModifiedReusesTheLastParse() throws IOException {
+        String body = "\"AAPL\",+1.25,\"+0.50%\"\n\"GOOG\",-3.00,\"-0.75%\"\n";
+        fetch(body);
+        assertEquals(0, transport.conditionalRequests); // Nothing to validate against yet.
+
+        transport.sendNotModified = true;
+        List<SymbolInfo> quotes = fetch(body);
+        assertEquals(1, transport.conditionalRequests);
+        assertEquals(1, Metrics.PARSES_SKIPPED.get());
+        assertEquals(2, Metrics.ROWS_PARSED.get());
+        assertQuote(quotes.get(1), "GOOG", -3, -0.75);
+    }
+
+    @Test
+    public void hashSeesEveryByte() {
+        byte[] a = "\"AAPL\",+1.25,\"+0.50%\"\n".getBytes(ASCII);
+        byte[] b = a.clone();
+        b[9]++;
+        assertTrue(CsvQuoteProvider.hash(a, a.length) != CsvQuoteProvider.hash(b, b.length));
+        assertEquals(CsvQuoteProvider.hash(a, a.length), CsvQuoteProvider.hash(a.clone(), a.length));
+    }
+}
@@ -0,0 +1,118 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FakeQuoteProviderTest {
+    private static final String[] SYMBOLS = FakeQuoteProvider.syntheticSymbols(500);
+
+    private static List<SymbolInfo> fetch(FakeQuoteProvider provider, int from, int to) throws IOException {
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        int rows = provider.fetchQuotes(SYMBOLS, from, to, slots);
+        return slots.subList(0, rows);
+    }
+
+    @Test
+    public void sameInputsSameQuotes() throws Exception {
+        List<SymbolInfo> a = fetch(new FakeQuoteProvider(7, 0, 0.1, 0), 0, 500);
+        List<SymbolInfo> b = fetch(new FakeQuoteProvider(7, 0, 0.1, 0), 0, 500);
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(SYMBOLS[i], a.get(i).Symbol);
+            assertEquals(a.get(i).Error, b.get(i).Error);
+            assertEquals(a.get(i).Percent, b.get(i).Percent, 0);
+            assertEquals(a.get(i).Change, b.get(i).Change, 0);
+        }
+    }
+
+    @Test
+    public void advanceMovesTheMarket() throws Exception {
+        FakeQuoteProvider provider = new FakeQuoteProvider(7, 0, 0, 0);
+        List<SymbolInfo> before = new ArrayList<SymbolInfo>(fetch(provider, 0, 100));
+        provider.advance();
+        List<SymbolInfo> after = fetch(provider, 0, 100);
+        int moved = 0;
+        for (int i = 0; i < before.size(); i++) {
+            if (before.get(i).Percent != after.get(i).Percent)
+                moved++;
+            assertTrue(Math.abs(after.get(i).Percent) <= 5);
+        }
+        assertTrue("moved " + moved, moved > 90);
+    }
+
+    @Test
+    public void rowErrorsFollowTheRate() throws Exception {
+        assertErrorRows(0, 0, 0);
+        assertErrorRows(1, 500, 500);
+        assertErrorRows(0.2, 70, 130);
+    }
+
+    private static void assertErrorRows(double errorRate, int min, int max) throws IOException {
+        int errors = 0;
+        for (SymbolInfo si : fetch(new FakeQuoteProvider(3, 0, errorRate, 0), 0, 500)) {
+            if (si.Error) {
+                errors++;
+                assertEquals(0, si.Percent, 0);
+                assertEquals(0, si.Change, 0);
+            }
+        }
+        assertTrue(errorRate + ": " + errors, errors >= min && errors <= max);
+    }
+
+    @Test
+    public void requestFailuresFollowTheRate() throws Exception {
+        FakeQuoteProvider provider = new FakeQuoteProvider(3, 0, 0, 0);
+        assertEquals(0, failures(provider));
+        provider.setFailureRate(1);
+        assertEquals(100, failures(provider));
+        provider.setFailureRate(0.5);
+        int failures = failures(provider);
+        assertTrue("failures " + failures, failures > 25 && failures < 75);
+    }
+
+    // Requests failing out of 100 different batches.
+    private static int failures(FakeQuoteProvider provider) {
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                provider.fetchQuotes(SYMBOLS, i, i + 5, new ArrayList<SymbolInfo>());
+            }
+            catch (IOException e) {
+                assertEquals("Simulated failure", e.getMessage());
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    @Test
+    public void rowLimitTruncates() throws Exception {
+        FakeQuoteProvider provider = new FakeQuoteProvider(3, 0, 0, 10);
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        assertEquals(10, provider.fetchQuotes(SYMBOLS, 100, 150, slots));
+        assertEquals(SYMBOLS[109], slots.get(9).Symbol);
+        assertEquals(5, provider.fetchQuotes(SYMBOLS, 0, 5, slots));
+        assertEquals(10, slots.size()); // Reused, not grown.
+    }
+
+    @Test
+    public void latencyIsSleptAndInterruptible() throws Exception {
+        FakeQuoteProvider provider = new FakeQuoteProvider(3, 10000, 0, 0);
+        Thread.currentThread().interrupt();
+        try {
+            provider.fetchQuotes(SYMBOLS, 0, 5, new ArrayList<SymbolInfo>());
+            fail("expected an InterruptedIOException");
+        }
+        catch (IOException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,216 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingQuoteProviderTest {
+    private static final String[] SYMBOLS = { "AAPL", "GOOG", "MSFT" };
+
+    // Blocks like a socket read, deaf to interrupts, until aborted.
+    private static class StuckProvider implements QuoteProvider {
+        final CountDownLatch aborted = new CountDownLatch(1);
+        volatile Thread fetching, abortedThread;
+
+        @Override
+        public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+            fetching = Thread.currentThread();
+            while (true) {
+                try {
+                    aborted.await();
+                    throw new IOException("Aborted");
+                }
+                catch (InterruptedException e) {
+                    // Ignored, as a blocked read would.
+                }
+            }
+        }
+
+        @Override
+        public void abort(Thread thread) {
+            abortedThread = thread;
+            aborted.countDown();
+        }
+    }
+
+    // Fake quotes after a fixed delay, or an error. Remembers the row lists it was handed.
+    private static class SlowProvider implements QuoteProvider {
+        private final FakeQuoteProvider quotes = new FakeQuoteProvider(1, 0, 0, 0);
+        final long latencyMs;
+        final boolean fail;
+        final List<List<SymbolInfo>> slotLists = new ArrayList<List<SymbolInfo>>();
+        volatile int calls;
+        SlowProvider(long latencyMs, boolean fail) {
+            this.latencyMs = latencyMs;
+            this.fail = fail;
+        }
+
+        @Override
+        public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+            synchronized (this) {
+                calls++;
+                slotLists.add(slots);
+            }
+            try {
+                Thread.sleep(latencyMs);
+            }
+            catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+            if (fail)
+                throw new IOException("Failed " + latencyMs);
+            return quotes.fetchQuotes(symbols, from, to, slots);
+        }
+
+        @Override
+        public void abort(Thread thread) {
+        }
+    }
+
+    @Test
+    public void fastPrimaryIsNotHedged() throws Exception {
+        SlowProvider primary = new SlowProvider(0, false);
+        SlowProvider secondary = new SlowProvider(0, false);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, secondary, 1000);
+        try {
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(3, hedging.fetchQuotes(SYMBOLS, 0, 3, slots));
+            assertEquals("MSFT", slots.get(2).Symbol);
+            assertEquals(0, secondary.calls);
+            assertEquals(0, hedging.getHedges());
+            assertEquals(0, hedging.getFailovers());
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    @Test
+    public void slowPrimaryIsHedged() throws Exception {
+        SlowProvider primary = new SlowProvider(2000, false);
+        SlowProvider secondary = new SlowProvider(0, false);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, secondary, 50);
+        try {
+            long start = System.nanoTime();
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(3, hedging.fetchQuotes(SYMBOLS, 0, 3, slots));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("waited " + elapsedMs, elapsedMs >= 50 && elapsedMs < 1000); // The hedge delay, not the primary.
+            assertEquals("GOOG", slots.get(1).Symbol);
+            assertEquals(1, secondary.calls);
+            assertEquals(1, hedging.getHedges());
+            assertEquals(1, hedging.getSecondaryWins());
+            assertEquals(0, hedging.getFailovers());
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    @Test
+    public void failedPrimaryFailsOverWithoutWaiting() throws Exception {
+        SlowProvider primary = new SlowProvider(0, true);
+        SlowProvider secondary = new SlowProvider(0, false);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, secondary, 5000);
+        try {
+            long start = System.nanoTime();
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(3, hedging.fetchQuotes(SYMBOLS, 0, 3, slots));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2500);
+            assertEquals("AAPL", slots.get(0).Symbol);
+            assertEquals(1, hedging.getFailovers());
+            assertEquals(0, hedging.getHedges());
+            assertEquals(1, hedging.getSecondaryWins());
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    // Hedged, the primary then fails before the secondary answers: still the secondary's quotes.
+    @Test
+    public void hedgeOutlivesFailingPrimary() throws Exception {
+        SlowProvider primary = new SlowProvider(100, true);
+        SlowProvider secondary = new SlowProvider(300, false);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, secondary, 20);
+        try {
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(3, hedging.fetchQuotes(SYMBOLS, 0, 3, slots));
+            assertEquals(1, hedging.getHedges());
+            assertEquals(0, hedging.getFailovers()); // Already asked, not asked again.
+            assertEquals(1, secondary.calls);
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    @Test
+    public void bothFailingThrowsTheFirstError() throws Exception {
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(new SlowProvider(0, true), new SlowProvider(10, true), 1000);
+        try {
+            hedging.fetchQuotes(SYMBOLS, 0, 3, new ArrayList<SymbolInfo>());
+            fail("expected an IOException");
+        }
+        catch (IOException e) {
+            assertEquals("Failed 0", e.getMessage());
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    // The caller's rows are filled in place and the attempt rows are handed to the provider again next time.
+    @Test
+    public void rowsAreReused() throws Exception {
+        SlowProvider primary = new SlowProvider(0, false);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, new SlowProvider(0, false), 1000);
+        try {
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            hedging.fetchQuotes(SYMBOLS, 0, 3, slots);
+            SymbolInfo first = slots.get(0);
+            assertFalse(first == primary.slotLists.get(0).get(0)); // A copy, the attempt keeps its own.
+            for (int i = 0; i < 5; i++) {
+                assertEquals(2, hedging.fetchQuotes(SYMBOLS, 1, 3, slots));
+                assertSame(first, slots.get(0));
+                assertEquals("GOOG", first.Symbol);
+            }
+            assertEquals(6, primary.calls);
+            for (List<SymbolInfo> attemptSlots : primary.slotLists)
+                assertSame(primary.slotLists.get(0), attemptSlots);
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+
+    @Test
+    public void losingAttemptIsAborted() throws Exception {
+        StuckProvider primary = new StuckProvider();
+        FakeQuoteProvider secondary = new FakeQuoteProvider(1, 0, 0, 0);
+        HedgingQuoteProvider hedging = new HedgingQuoteProvider(primary, secondary, 50);
+        try {
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(2, hedging.fetchQuotes(new String[] { "AAPL", "GOOG" }, 0, 2, slots));
+            assertEquals("AAPL", slots.get(0).Symbol);
+            assertEquals(1, hedging.getHedges());
+            assertEquals(1, hedging.getSecondaryWins());
+
+            assertTrue(primary.aborted.await(5, TimeUnit.SECONDS));
+            assertTrue(primary.abortedThread == primary.fetching);
+        }
+        finally {
+            hedging.shutdown();
+        }
+    }
+}
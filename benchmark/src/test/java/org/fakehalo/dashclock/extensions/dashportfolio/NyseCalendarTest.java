@@ -0,0 +1,106 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Dates checked against the exchange's published holiday and early close schedules. Months are 1-12 here.
+public class NyseCalendarTest {
+    private final NyseCalendar calendar = new NyseCalendar();
+
+    private void assertClosed(int year, int month, int day) {
+        assertFalse(year + "-" + month + "-" + day + " should be closed", calendar.isTradingDay(year, month - 1, day));
+        assertEquals(-1, calendar.getOpenMinute(year, month - 1, day, false));
+        assertEquals(-1, calendar.getCloseMinute(year, month - 1, day, true));
+    }
+
+    private void assertOpen(int year, int month, int day) {
+        assertTrue(year + "-" + month + "-" + day + " should be open", calendar.isTradingDay(year, month - 1, day));
+    }
+
+    private void assertCloses(int year, int month, int day, int closeMinute, int postMarketCloseMinute) {
+        assertOpen(year, month, day);
+        assertEquals(9 * 60 + 30, calendar.getOpenMinute(year, month - 1, day, false));
+        assertEquals(4 * 60, calendar.getOpenMinute(year, month - 1, day, true));
+        assertEquals(closeMinute, calendar.getCloseMinute(year, month - 1, day, false));
+        assertEquals(postMarketCloseMinute, calendar.getCloseMinute(year, month - 1, day, true));
+    }
+
+    @Test
+    public void fullYearOfHolidays() {
+        int[][] closed2024 = { { 1, 1 }, { 1, 15 }, { 2, 19 }, { 3, 29 }, { 5, 27 }, { 6, 19 }, { 7, 4 }, { 9, 2 }, { 11, 28 }, { 12, 25 } };
+        int holidays = 0, tradingDays = 0;
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2024, Calendar.JANUARY, 1);
+        while (cal.get(Calendar.YEAR) == 2024) {
+            int month = cal.get(Calendar.MONTH), day = cal.get(Calendar.DAY_OF_MONTH);
+            if (calendar.isHoliday(2024, month, day))
+                holidays++;
+            if (calendar.isTradingDay(2024, month, day))
+                tradingDays++;
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        for (int[] d : closed2024)
+            assertClosed(2024, d[0], d[1]);
+        assertEquals(closed2024.length, holidays);
+        assertEquals(252, tradingDays);
+    }
+
+    @Test
+    public void weekendHolidaysAreObserved() {
+        assertClosed(2021, 7, 5); // Independence Day on a Sunday.
+        assertClosed(2020, 7, 3); // Independence Day on a Saturday.
+        assertClosed(2022, 12, 26); // Christmas on a Sunday.
+        assertClosed(2021, 12, 24); // Christmas on a Saturday.
+        assertClosed(2023, 1, 2); // New Year's Day on a Sunday.
+        assertClosed(2022, 6, 20); // Juneteenth on a Sunday.
+        assertClosed(2026, 6, 19);
+    }
+
+    @Test
+    public void saturdayNewYearIsNotMovedIntoTheOldYear() {
+        assertOpen(2021, 12, 31); // 2022-01-01 was a Saturday.
+        assertClosed(2022, 1, 1);
+        assertOpen(2022, 1, 3);
+        assertOpen(2027, 12, 31); // 2028-01-01 is a Saturday.
+    }
+
+    @Test
+    public void goodFriday() {
+        assertClosed(2019, 4, 19);
+        assertClosed(2022, 4, 15);
+        assertClosed(2023, 4, 7);
+        assertClosed(2024, 3, 29);
+        assertClosed(2025, 4, 18);
+        assertClosed(2038, 4, 23); // Latest possible Easter.
+        assertClosed(2285, 3, 20); // Earliest possible Easter.
+        assertOpen(2024, 4, 1); // Easter Monday trades.
+    }
+
+    @Test
+    public void juneteenthFrom2022() {
+        assertOpen(2021, 6, 18);
+        assertOpen(2021, 6, 21);
+        assertClosed(2022, 6, 20);
+        assertClosed(2023, 6, 19);
+        assertClosed(2024, 6, 19);
+        assertClosed(2025, 6, 19);
+    }
+
+    @Test
+    public void earlyCloses() {
+        assertCloses(2024, 7, 3, 13 * 60, 17 * 60);
+        assertCloses(2024, 11, 29, 13 * 60, 17 * 60);
+        assertCloses(2024, 12, 24, 13 * 60, 17 * 60);
+        assertCloses(2023, 7, 3, 13 * 60, 17 * 60); // Monday before a Tuesday holiday.
+        assertCloses(2023, 11, 24, 13 * 60, 17 * 60);
+        assertCloses(2021, 12, 23, 16 * 60, 20 * 60); // Christmas Eve was the observed holiday, the day before is normal.
+        assertCloses(2024, 7, 5, 16 * 60, 20 * 60);
+        assertCloses(2024, 11, 27, 16 * 60, 20 * 60);
+    }
+}
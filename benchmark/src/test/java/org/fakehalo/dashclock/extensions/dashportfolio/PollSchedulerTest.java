@@ -0,0 +1,133 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Drives PollScheduler with a simulated clock, nextPoll() takes the time so nothing here waits.
+public class PollSchedulerTest {
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DASHCLOCK_PACE = 30 * MINUTE; // How often dashclock asks when we don't hold it back.
+
+    private final NyseCalendar calendar = new NyseCalendar();
+    private final PollScheduler scheduler = new PollScheduler(calendar);
+
+    // Wall clock time in zone, month 1-12.
+    private static long at(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        GregorianCalendar cal = new GregorianCalendar(zone);
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute);
+        return cal.getTimeInMillis();
+    }
+
+    private static long ny(int year, int month, int day, int hour, int minute) {
+        return at(NEW_YORK, year, month, day, hour, minute);
+    }
+
+    private static GregorianCalendar local(long time) {
+        GregorianCalendar cal = new GregorianCalendar(NEW_YORK);
+        cal.setTimeInMillis(time);
+        return cal;
+    }
+
+    private static int minuteOfDay(Calendar cal) {
+        return cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+    }
+
+    @Test
+    public void sleepsAcrossDstTransitions() {
+        // Friday close to Monday open, spring forward (2024-03-10) and fall back (2024-11-03) in between.
+        assertEquals(at(UTC, 2024, 3, 11, 13, 30), scheduler.nextPoll(ny(2024, 3, 8, 17, 0), false, false));
+        assertEquals(at(UTC, 2024, 11, 4, 14, 30), scheduler.nextPoll(ny(2024, 11, 1, 17, 0), false, false));
+
+        // Pre-market opens at 4:00 local either side of the change.
+        assertEquals(at(UTC, 2024, 3, 11, 8, 0), scheduler.nextPoll(ny(2024, 3, 8, 21, 0), true, false));
+        assertEquals(at(UTC, 2024, 11, 4, 9, 0), scheduler.nextPoll(ny(2024, 11, 1, 21, 0), true, false));
+    }
+
+    @Test
+    public void sleepsOverHolidays() {
+        assertEquals(ny(2024, 3, 28, 9, 30), scheduler.nextPoll(ny(2024, 3, 28, 2, 0), false, false));
+        assertEquals(ny(2024, 4, 1, 9, 30), scheduler.nextPoll(ny(2024, 3, 28, 16, 30), false, false)); // Good Friday.
+        assertEquals(ny(2024, 12, 26, 9, 30), scheduler.nextPoll(ny(2024, 12, 24, 13, 30), false, false)); // Early close, Christmas.
+        assertEquals(ny(2022, 1, 3, 9, 30), scheduler.nextPoll(ny(2021, 12, 31, 16, 30), false, false)); // Saturday New Year.
+        assertEquals(ny(2022, 6, 21, 9, 30), scheduler.nextPoll(ny(2022, 6, 17, 16, 30), false, false)); // Juneteenth observed.
+    }
+
+    @Test
+    public void backoffIsCappedAtSessionEnd() {
+        long now = ny(2024, 6, 3, 14, 30); // The last backoff would run to 16:45.
+        long[] expected = { 5, 10, 20, 40, 60 };
+        for (long minutes : expected) {
+            long next = scheduler.nextPoll(now, false, false);
+            assertEquals(Math.min(now + minutes * MINUTE, ny(2024, 6, 3, 16, PollScheduler.CLOSE_GRACE_MINUTES)), next);
+            now = next;
+        }
+        assertEquals(ny(2024, 6, 4, 9, 30), scheduler.nextPoll(now, false, false));
+
+        // Early close days end earlier.
+        PollScheduler early = new PollScheduler(calendar);
+        now = ny(2024, 11, 29, 12, 0);
+        for (int i = 0; i < 4; i++)
+            now = early.nextPoll(now, false, false);
+        assertEquals(ny(2024, 11, 29, 13, PollScheduler.CLOSE_GRACE_MINUTES), now);
+
+        // A change resets the backoff.
+        assertEquals(ny(2024, 6, 4, 10, 0), scheduler.nextPoll(ny(2024, 6, 4, 10, 0), false, true));
+        assertEquals(ny(2024, 6, 4, 10, 5), scheduler.nextPoll(ny(2024, 6, 4, 10, 0), false, false));
+    }
+
+    @Test
+    public void simulatedYear() {
+        simulateYear(false, 9 * 60 + 30);
+        simulateYear(true, 4 * 60);
+    }
+
+    private void simulateYear(boolean extendedHours, int openMinute) {
+        PollScheduler scheduler = new PollScheduler(calendar);
+        Random random = new Random(2024);
+        Set<Integer> daysPolled = new HashSet<Integer>();
+        long now = ny(2024, 1, 1, 0, 0), end = ny(2025, 1, 1, 0, 0);
+        while (now < end) {
+            GregorianCalendar cal = local(now);
+            int year = cal.get(Calendar.YEAR), month = cal.get(Calendar.MONTH), day = cal.get(Calendar.DAY_OF_MONTH);
+            int minute = minuteOfDay(cal);
+            int open = calendar.getOpenMinute(year, month, day, extendedHours);
+            int sessionEnd = calendar.getCloseMinute(year, month, day, extendedHours) + PollScheduler.CLOSE_GRACE_MINUTES;
+            boolean inSession = open >= 0 && minute >= open && minute < sessionEnd;
+
+            long next = scheduler.nextPoll(now, extendedHours, random.nextInt(4) == 0);
+            assertTrue(next >= now);
+            if (inSession) {
+                daysPolled.add(year * 10000 + month * 100 + day);
+                assertTrue(next - now <= PollScheduler.MAX_BACKOFF_MS);
+                assertTrue(next <= now + (sessionEnd - minute) * MINUTE);
+            }
+            else {
+                // Closed: sleep to exactly the next open, skipping only days that don't trade.
+                GregorianCalendar wake = local(next);
+                assertEquals(openMinute, minuteOfDay(wake));
+                assertTrue(calendar.isTradingDay(wake.get(Calendar.YEAR), wake.get(Calendar.MONTH), wake.get(Calendar.DAY_OF_MONTH)));
+                GregorianCalendar between = (GregorianCalendar)cal.clone();
+                if (open < 0 || minute >= open)
+                    between.add(Calendar.DAY_OF_MONTH, 1);
+                while (between.get(Calendar.DAY_OF_YEAR) != wake.get(Calendar.DAY_OF_YEAR)) {
+                    assertTrue(!calendar.isTradingDay(between.get(Calendar.YEAR), between.get(Calendar.MONTH), between.get(Calendar.DAY_OF_MONTH)));
+                    between.add(Calendar.DAY_OF_MONTH, 1);
+                }
+            }
+            now = next > now ? next : now + DASHCLOCK_PACE;
+        }
+        assertEquals(252, daysPolled.size());
+    }
+}
@@ -0,0 +1,163 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.error;
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PortfolioAggregatorTest {
+    private static final double EPSILON = 1e-9;
+
+    // A quote off a previous close, the way the feed derives its percent.
+    private static SymbolInfo moved(String symbol, double previousClose, double change) {
+        return quote(symbol, change, change * 100 / previousClose);
+    }
+
+    @Test
+    public void plainAverageWithoutHoldings() {
+        PortfolioAggregator aggregator = new PortfolioAggregator();
+        aggregator.configure(new String[] { "AAA", "BBB", "CCC" }, "");
+        aggregator.update(quote("AAA", 1, 2));
+        aggregator.update(quote("BBB", -3, -1));
+        aggregator.update(error("CCC"));
+        assertFalse(aggregator.isWeighted());
+        assertEquals(0.5, aggregator.getPercent(), EPSILON);
+        assertEquals(-1, aggregator.getChange(), EPSILON);
+        assertEquals(2, aggregator.getValidCount());
+        assertEquals(1, aggregator.getErrorCount());
+    }
+
+    @Test
+    public void weightsByPositionValue() {
+        // 100 shares of a $2 stock up 10%, 1 share of a $3000 stock down 1%.
+        PortfolioAggregator aggregator = new PortfolioAggregator();
+        aggregator.configure(new String[] { "CHEAP", "DEAR" }, "CHEAP=100, DEAR=1");
+        aggregator.update(moved("CHEAP", 2, 0.2));
+        aggregator.update(moved("DEAR", 3000, -30));
+        double pnl = 100 * 0.2 - 30;
+        assertTrue(aggregator.isWeighted());
+        assertEquals(pnl, aggregator.getProfitLoss(), EPSILON);
+        assertEquals(pnl, aggregator.getChange(), EPSILON);
+        assertEquals(pnl * 100 / (100 * 2 + 3000), aggregator.getPercent(), EPSILON);
+        assertTrue(aggregator.getPercent() < 0); // Share counts as weights would have said +4.95%.
+    }
+
+    @Test
+    public void unlistedSymbolsAreLeftOutWithHoldings() {
+        PortfolioAggregator aggregator = new PortfolioAggregator();
+        aggregator.configure(new String[] { "AAA", "BBB", "^GSPC" }, "AAA=10");
+        aggregator.update(moved("AAA", 50, 1));
+        aggregator.update(moved("BBB", 20, 5));
+        aggregator.update(moved("^GSPC", 5000, 40));
+        aggregator.update(error("BBB"));
+        assertEquals(10, aggregator.getProfitLoss(), EPSILON);
+        assertEquals(2, aggregator.getPercent(), EPSILON);
+        assertEquals(1, aggregator.getValidCount());
+        assertEquals(0, aggregator.getErrorCount());
+    }
+
+    @Test
+    public void previousCloseSurvivesFlatQuotes() {
+        PortfolioAggregator aggregator = new PortfolioAggregator();
+        aggregator.configure(new String[] { "AAA", "BBB" }, "AAA=1, BBB=1");
+        aggregator.update(moved("AAA", 100, 5));
+        aggregator.update(moved("BBB", 100, -5));
+        aggregator.update(quote("BBB", 0, 0)); // Back to flat, the close is still known.
+        assertEquals(2.5, aggregator.getPercent(), EPSILON);
+    }
+
+    // Moves under PortfolioAggregator's 0.1% are too coarse to derive a close from, they mustn't skew the percent.
+    @Test
+    public void smallMovesKeepChangeAndCloseInStep() {
+        PortfolioAggregator aggregator = new PortfolioAggregator();
+        aggregator.configure(new String[] { "AAA", "BBB" }, "AAA=100, BBB=10");
+        aggregator.update(moved("AAA", 100, 0.06)); // 0.06%, no close yet.
+        assertEquals(0.06, aggregator.getPercent(), EPSILON); // Nothing known, quantity weighted average.
+
+        aggregator.update(moved("BBB", 50, 1)); // 2%, close known.
+        assertEquals(100 * 0.06 + 10 * 1, aggregator.getProfitLoss(), EPSILON);
+        assertEquals(2, aggregator.getPercent(), EPSILON); // AAA's change stays out until its close is known.
+
+        aggregator.update(moved("AAA", 100, -0.5)); // Now it is.
+        aggregator.update(moved("AAA", 100, 0.06)); // And stays known through small moves.
+        assertEquals((100 * 0.06 + 10 * 1) * 100 / (100 * 100 + 10 * 50), aggregator.getPercent(), EPSILON);
+    }
+
+    // Brute force over the latest quote of every symbol, against the running sums. Quotes are generated off fixed
+    // previous closes, so the close the aggregator derives is the true one. Moves start at 0.01%, below the smallest
+    // the aggregator derives a close from.
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(2014);
+        for (boolean withHoldings : new boolean[] { false, true }) {
+            int count = 200;
+            String[] symbols = new String[count];
+            double[] closes = new double[count];
+            StringBuilder holdingsPref = new StringBuilder();
+            Map<String, Double> quantities = new HashMap<String, Double>();
+            for (int i = 0; i < count; i++) {
+                symbols[i] = "S" + i;
+                closes[i] = 1 + random.nextDouble() * 2000;
+                if (withHoldings && i % 3 != 0) {
+                    double qty = 1 + random.nextInt(500);
+                    quantities.put(symbols[i], qty);
+                    holdingsPref.append(symbols[i]).append('=').append((int)qty).append(", ");
+                }
+            }
+
+            PortfolioAggregator aggregator = new PortfolioAggregator();
+            aggregator.configure(symbols, holdingsPref.toString());
+            SymbolInfo[] latest = new SymbolInfo[count];
+            boolean[] closeKnown = new boolean[count];
+            for (int n = 0; n < 100000; n++) {
+                int i = random.nextInt(count);
+                SymbolInfo si = random.nextInt(20) == 0 ? error(symbols[i])
+                        : moved(symbols[i], closes[i], closes[i] * (0.0001 + random.nextDouble() * random.nextDouble() * 0.05) * (random.nextBoolean() ? 1 : -1));
+                latest[i] = si;
+                if (!si.Error && Math.abs(si.Percent) >= 0.1)
+                    closeKnown[i] = true;
+                aggregator.update(si);
+                if (n % 997 != 0)
+                    continue;
+
+                double weight = 0, change = 0, percent = 0, value = 0, closedChange = 0;
+                int valid = 0, errors = 0;
+                for (int j = 0; j < count; j++) {
+                    Double qty = quantities.get(symbols[j]);
+                    if (latest[j] == null || (withHoldings && qty == null))
+                        continue;
+                    if (latest[j].Error) {
+                        errors++;
+                        continue;
+                    }
+                    double w = qty != null ? qty : 1;
+                    valid++;
+                    weight += w;
+                    change += w * latest[j].Change;
+                    percent += w * latest[j].Percent;
+                    if (closeKnown[j]) {
+                        value += w * closes[j];
+                        closedChange += w * latest[j].Change;
+                    }
+                }
+                assertEquals(valid, aggregator.getValidCount());
+                assertEquals(errors, aggregator.getErrorCount());
+                if (withHoldings) {
+                    assertEquals(change, aggregator.getProfitLoss(), EPSILON * Math.max(1, Math.abs(change)));
+                    assertEquals(value > 0 ? closedChange * 100 / value : weight > 0 ? percent / weight : 0, aggregator.getPercent(), EPSILON);
+                }
+                else {
+                    assertEquals(percent / weight, aggregator.getPercent(), EPSILON);
+                    assertEquals(change / weight, aggregator.getChange(), EPSILON);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+// Polls the way the update worker does (PortfolioExtension.fetchSymbols, which needs Android to run): the union of
+// every portfolio, minus what's still fresh in the cache, in one batched fetch.
+public class PortfolioTest {
+    private static final long TTL_MS = 60000;
+    private static final String[] POOL = FakeQuoteProvider.syntheticSymbols(200);
+
+    private final SymbolSetNormalizer normalizer = new SymbolSetNormalizer("^MYINDEX");
+    private final QuoteBatchFetcher fetcher = new QuoteBatchFetcher();
+
+    @After
+    public void tearDown() {
+        fetcher.shutdown();
+    }
+
+    // Counts calls and how often each symbol was asked for.
+    private static class CountingProvider implements QuoteProvider {
+        private final FakeQuoteProvider quotes = new FakeQuoteProvider(1, 0, 0, 0);
+        int calls;
+        final Map<String, Integer> requested = new HashMap<String, Integer>();
+
+        @Override
+        public synchronized int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+            calls++;
+            for (int i = from; i < to; i++) {
+                Integer n = requested.get(symbols[i]);
+                requested.put(symbols[i], n == null ? 1 : n + 1);
+            }
+            return quotes.fetchQuotes(symbols, from, to, slots);
+        }
+
+        @Override
+        public void abort(Thread thread) {
+        }
+    }
+
+    // count portfolios of 10 symbols each out of POOL, neighbours sharing most of theirs. 50 cover all of it.
+    private List<Portfolio> portfolios(int count) {
+        StringBuilder pref = new StringBuilder();
+        for (int p = 1; p < count; p++) {
+            pref.append("P").append(p).append(':');
+            for (int i = 0; i < 10; i++)
+                pref.append(POOL[(p * 4 + i) % POOL.length]).append(',');
+            pref.append("; order=percent\n");
+        }
+        Portfolio main = new Portfolio("Main", "^GSPC", normalizer.normalize("^GSPC," + POOL[0] + "," + POOL[1], 0), null, null);
+        return Portfolio.parseAll(pref.toString(), main, normalizer);
+    }
+
+    @Test
+    public void overlappingPortfoliosFetchOncePerPoll() throws IOException {
+        for (int count : new int[] { 1, 5, 20, 50 }) {
+            List<Portfolio> portfolios = portfolios(count);
+            assertEquals(count, portfolios.size());
+            String[] symbols = Portfolio.union(portfolios, normalizer);
+            int batches = (symbols.length + QuoteBatchFetcher.DEFAULT_BATCH_SIZE - 1) / QuoteBatchFetcher.DEFAULT_BATCH_SIZE;
+
+            CountingProvider provider = new CountingProvider();
+            QuoteCache cache = new QuoteCache();
+            cache.setTtl(TTL_MS);
+            long now = 0;
+            for (int poll = 1; poll <= 3; poll++, now += TTL_MS) {
+                String[] stale = cache.getStale(symbols, now);
+                assertEquals(symbols.length, stale.length);
+                for (SymbolInfo si : fetcher.fetch(provider, stale))
+                    cache.put(si, now);
+                assertEquals(0, cache.getStale(symbols, now + 1).length); // Nothing left for a second run in the same poll.
+
+                assertEquals(count + " portfolios", poll * batches, provider.calls); // One request per batch, nothing twice.
+                assertEquals(symbols.length, provider.requested.size());
+                for (int n : provider.requested.values())
+                    assertEquals(poll, n);
+            }
+            for (Portfolio p : portfolios)
+                assertEquals(p.symbols.length, cache.get(p.symbols).size());
+        }
+    }
+
+    @Test
+    public void unionIsSortedAndUnique() {
+        String[] symbols = Portfolio.union(portfolios(50), normalizer);
+        assertEquals(POOL.length + 1, symbols.length); // The pool plus the shared title, 5 batches.
+        for (int i = 1; i < symbols.length; i++)
+            assertEquals(-1, Integer.signum(symbols[i - 1].compareTo(symbols[i])));
+    }
+}
@@ -0,0 +1,129 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QuoteBatchFetcherTest {
+    private static final String[] SYMBOLS = FakeQuoteProvider.syntheticSymbols(200); // 4 batches of 50.
+
+    private QuoteBatchFetcher fetcher = new QuoteBatchFetcher();
+
+    @After
+    public void tearDown() {
+        fetcher.shutdown();
+    }
+
+    // Stand-in for the feed with a fixed latency per batch, failing the batches starting at the given symbols. Tracks
+    // how many batches were in flight at once.
+    private static class SlowProvider implements QuoteProvider {
+        private final FakeQuoteProvider quotes = new FakeQuoteProvider(1, 0, 0, 0);
+        private final long latencyMs;
+        private final List<String> failing;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        volatile Thread lastThread;
+        volatile CountDownLatch together; // If set, every batch waits here until all have started.
+
+        SlowProvider(long latencyMs, String... failing) {
+            this.latencyMs = latencyMs;
+            this.failing = Arrays.asList(failing);
+        }
+
+        @Override
+        public int fetchQuotes(String[] symbols, int from, int to, List<SymbolInfo> slots) throws IOException {
+            calls.incrementAndGet();
+            lastThread = Thread.currentThread();
+            int n = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (n <= max || maxInFlight.compareAndSet(max, n))
+                    break;
+            }
+            try {
+                if (together != null) {
+                    together.countDown();
+                    if (!together.await(10, TimeUnit.SECONDS))
+                        throw new IOException("Batches didn't run in parallel");
+                }
+                Thread.sleep(latencyMs);
+                if (failing.contains(symbols[from]))
+                    throw new IOException("Simulated failure");
+                return quotes.fetchQuotes(symbols, from, to, slots);
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e.toString());
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void abort(Thread thread) {
+        }
+    }
+
+    @Test
+    public void failedBatchOnlyMarksItsOwnSymbols() throws IOException {
+        SlowProvider provider = new SlowProvider(10, SYMBOLS[50]);
+        List<SymbolInfo> quotes = fetcher.fetch(provider, SYMBOLS);
+        assertEquals(4, provider.calls.get());
+        assertEquals(SYMBOLS.length, quotes.size());
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            assertEquals(SYMBOLS[i], quotes.get(i).Symbol); // Batch order.
+            assertEquals(SYMBOLS[i], i >= 50 && i < 100, quotes.get(i).Error);
+        }
+    }
+
+    @Test
+    public void everyBatchFailingThrows() {
+        try {
+            fetcher.fetch(new SlowProvider(0, SYMBOLS[0], SYMBOLS[50], SYMBOLS[100], SYMBOLS[150]), SYMBOLS);
+            fail("Expected an IOException");
+        }
+        catch (IOException e) {
+            assertEquals("Simulated failure", e.getMessage());
+        }
+    }
+
+    @Test
+    public void batchesRunInParallel() throws IOException {
+        SlowProvider provider = new SlowProvider(200);
+        provider.together = new CountDownLatch(4); // Would time out if the batches ran one after another.
+        long start = System.nanoTime();
+        List<SymbolInfo> quotes = fetcher.fetch(provider, SYMBOLS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(4, provider.maxInFlight.get());
+        assertTrue(elapsedMs + "ms", elapsedMs < 4 * 200);
+        for (SymbolInfo si : quotes)
+            assertFalse(si.Symbol, si.Error);
+    }
+
+    @Test
+    public void concurrencyIsBounded() throws IOException {
+        fetcher.shutdown();
+        fetcher = new QuoteBatchFetcher(25, 2);
+        SlowProvider provider = new SlowProvider(20);
+        assertEquals(SYMBOLS.length, fetcher.fetch(provider, SYMBOLS).size());
+        assertEquals(8, provider.calls.get());
+        assertEquals(2, provider.maxInFlight.get());
+
+        // A single batch runs on the calling thread.
+        fetcher.fetch(provider, new String[] { "AAPL" });
+        assertEquals(9, provider.calls.get());
+        assertTrue(provider.lastThread == Thread.currentThread());
+    }
+}
@@ -0,0 +1,112 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.error;
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Times are passed in, now below is the test's clock.
+public class QuoteCacheTest {
+    private static final long TTL_MS = 60000;
+    private static final String[] SYMBOLS = { "AAPL", "GOOG", "MSFT" };
+
+    private final QuoteCache cache = new QuoteCache();
+    private long now = 1000000;
+
+    @Test
+    public void entriesExpireAfterTheTtl() {
+        cache.setTtl(TTL_MS);
+        assertArrayEquals(SYMBOLS, cache.getStale(SYMBOLS, now));
+        cache.put(quote("AAPL", 1, 1), now);
+        cache.put(quote("GOOG", 2, 2), now);
+
+        now += TTL_MS / 2;
+        cache.put(quote("MSFT", 3, 3), now);
+        assertEquals(0, cache.getStale(SYMBOLS, now).length);
+
+        now += TTL_MS / 2; // AAPL and GOOG are a TTL old now.
+        assertArrayEquals(new String[] { "AAPL", "GOOG" }, cache.getStale(SYMBOLS, now));
+        now += TTL_MS / 2;
+        assertArrayEquals(SYMBOLS, cache.getStale(SYMBOLS, now));
+
+        // A clock that went backwards can't vouch for anything.
+        cache.put(quote("AAPL", 1, 1), now);
+        assertArrayEquals(new String[] { "AAPL" }, cache.getStale(new String[] { "AAPL" }, now - 1));
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        cache.setTtl(TTL_MS);
+        cache.getStale(SYMBOLS, now);
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        for (String symbol : SYMBOLS)
+            cache.put(quote(symbol, 1, 1), now);
+        cache.getStale(SYMBOLS, now + 1);
+        cache.getStale(new String[] { "AAPL", "IBM" }, now + 2);
+        assertEquals(4, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void errorNeverReplacesAGoodQuote() {
+        cache.setTtl(TTL_MS);
+        assertTrue(cache.put(quote("AAPL", 1.25, 0.5), now));
+        assertFalse(cache.put(error("AAPL"), now + TTL_MS));
+        List<SymbolInfo> cached = cache.get(new String[] { "AAPL" });
+        assertFalse(cached.get(0).Error);
+        assertEquals(1.25, cached.get(0).Change, 0);
+        assertEquals(now, cache.getFetchedAt("AAPL")); // Still aging, so the next poll asks again.
+        assertEquals(1, cache.getStale(new String[] { "AAPL" }, now + TTL_MS).length);
+
+        // An error is replaced by anything, and a good quote by a good one.
+        assertTrue(cache.put(error("GOOG"), now));
+        assertTrue(cache.put(quote("GOOG", 2, 1), now));
+        assertFalse(cache.put(quote("GOOG", 2, 1), now + 1)); // Same values, only the fetch time moves.
+        assertEquals(now + 1, cache.getFetchedAt("GOOG"));
+        assertEquals(0, cache.getFetchedAt("MSFT"));
+    }
+
+    @Test
+    public void entriesAreCopies() {
+        SymbolInfo si = quote("AAPL", 1, 1);
+        cache.put(si, now);
+        si.Change = 5; // Callers reuse their objects.
+        SymbolInfo cached = cache.get(new String[] { "AAPL" }).get(0);
+        assertEquals(1, cached.Change, 0);
+        cached.Change = 7;
+        assertEquals(1, cache.get(new String[] { "AAPL" }).get(0).Change, 0);
+    }
+
+    // What a reverse click re-renders from: every cached quote, in symbol order, however old, without asking for a fetch.
+    @Test
+    public void reverseRenderNeedsNoFetch() {
+        cache.setTtl(TTL_MS);
+        for (int i = 0; i < SYMBOLS.length; i++)
+            cache.put(quote(SYMBOLS[i], i, i), now);
+        long misses = cache.getMisses();
+        now += 10 * TTL_MS;
+
+        List<SymbolInfo> cached = cache.get(new String[] { "AAPL", "IBM", "GOOG", "MSFT" });
+        assertEquals(3, cached.size());
+        List<SymbolInfo> reversed = new SymbolOrdering().order(cached, SymbolOrdering.ORDER_ALPHA, true, 0);
+        assertEquals(Arrays.asList("MSFT", "GOOG", "AAPL"), Arrays.asList(reversed.get(0).Symbol, reversed.get(1).Symbol, reversed.get(2).Symbol));
+        assertEquals(misses, cache.getMisses()); // get() never counts towards a fetch.
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        cache.put(quote("AAPL", 1, 1), now);
+        cache.clear();
+        assertEquals(0, cache.get(SYMBOLS).size());
+        assertEquals(0, cache.getFetchedAt("AAPL"));
+    }
+}
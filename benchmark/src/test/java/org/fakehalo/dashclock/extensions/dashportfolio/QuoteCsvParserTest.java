@@ -0,0 +1,173 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.benchmark.Baselines;
+import org.fakehalo.dashclock.extensions.dashportfolio.benchmark.Payloads;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuoteCsvParserTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int BUFFER_SIZE = 8192; // QuoteCsvParser's read size.
+
+    private final QuoteCsvParser parser = new QuoteCsvParser();
+
+    private List<SymbolInfo> parse(String csv) {
+        byte[] bytes = csv.getBytes(ASCII);
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        int rows = parser.parse(bytes, bytes.length, slots);
+        return slots.subList(0, rows);
+    }
+
+    private static void assertQuote(SymbolInfo si, String symbol, double change, double percent) {
+        assertEquals(symbol, si.Symbol);
+        assertFalse(si.Symbol + " errored", si.Error);
+        assertEquals(change, si.Change, 0);
+        assertEquals(percent, si.Percent, 0);
+    }
+
+    @Test
+    public void quotedFields() {
+        List<SymbolInfo> quotes = parse("\"AAPL\",+1.23,\"+0.45%\"\r\n\"^GSPC\",\"-12.50\",\"-0.68%\"\r\n");
+        assertEquals(2, quotes.size());
+        assertQuote(quotes.get(0), "AAPL", 1.23, 0.45);
+        assertQuote(quotes.get(1), "^GSPC", -12.5, -0.68);
+    }
+
+    @Test
+    public void escapedQuotes() {
+        List<SymbolInfo> quotes = parse("\"A\"\"B\",0.10,\"0.20%\"\n\"\"\"C\"\"\",1,\"2%\"\n");
+        assertEquals(2, quotes.size());
+        assertQuote(quotes.get(0), "A\"B", 0.1, 0.2);
+        assertQuote(quotes.get(1), "\"C\"", 1, 2);
+    }
+
+    @Test
+    public void notAvailableIsAnError() {
+        List<SymbolInfo> quotes = parse("\"XYZZY\",N/A,\"N/A\"\n\"AAPL\",+1.00,\"N/A\"\n");
+        assertEquals(2, quotes.size());
+        for (SymbolInfo si : quotes) {
+            assertTrue(si.Symbol, si.Error);
+            assertEquals(0, si.Change, 0);
+            assertEquals(0, si.Percent, 0);
+        }
+    }
+
+    @Test
+    public void blankAndShortLinesAreSkipped() {
+        List<SymbolInfo> quotes = parse("\r\n\n\"AAPL\",+1.00,\"+0.50%\"\n\n  \r\n\"SHORT\",1\n\"GOOG\",-2.00,\"-0.25%\"");
+        assertEquals(2, quotes.size());
+        assertQuote(quotes.get(0), "AAPL", 1, 0.5);
+        assertQuote(quotes.get(1), "GOOG", -2, -0.25);
+    }
+
+    @Test
+    public void slotsAreReused() {
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        byte[] bytes = "\"AAPL\",+1.00,\"+0.50%\"\n\"GOOG\",-2.00,\"-0.25%\"\n".getBytes(ASCII);
+        parser.parse(bytes, bytes.length, slots);
+        SymbolInfo first = slots.get(0);
+        String symbol = first.Symbol;
+        bytes = "\"AAPL\",+3.00,\"+1.50%\"\n".getBytes(ASCII);
+        assertEquals(1, parser.parse(bytes, bytes.length, slots));
+        assertTrue(first == slots.get(0));
+        assertTrue(symbol == first.Symbol); // Same symbol, no new string.
+        assertQuote(first, "AAPL", 3, 1.5);
+    }
+
+    @Test
+    public void rowSplitAcrossBufferBoundary() throws IOException {
+        // Pad with a first row so the second row's symbol straddles the end of the first read.
+        String second = "\"BOUNDARY\",-4.25,\"-1.75%\"\n";
+        StringBuilder sb = new StringBuilder("\"PAD");
+        while (sb.length() < BUFFER_SIZE - 4 - "\",1,\"1%\"\n".length())
+            sb.append('X');
+        sb.append("\",1,\"1%\"\n");
+        sb.append(second);
+        assertTrue(sb.indexOf(second) < BUFFER_SIZE && sb.indexOf(second) + second.length() > BUFFER_SIZE);
+
+        List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+        byte[] bytes = sb.toString().getBytes(ASCII);
+        assertEquals(2, parser.parse(new ByteArrayInputStream(bytes), slots));
+        assertQuote(slots.get(1), "BOUNDARY", -4.25, -1.75);
+        assertEquals(64, slots.get(0).Symbol.length()); // Over long fields are truncated, not carried over.
+    }
+
+    @Test
+    public void streamAndBytesAgreeOnLargeFeeds() throws IOException {
+        byte[] payload = Payloads.synthetic(10000, 0.05);
+        List<SymbolInfo> fromBytes = new ArrayList<SymbolInfo>();
+        List<SymbolInfo> fromStream = new ArrayList<SymbolInfo>();
+        int rows = parser.parse(payload, payload.length, fromBytes);
+        assertEquals(rows, new QuoteCsvParser().parse(new ByteArrayInputStream(payload), fromStream));
+        for (int i = 0; i < rows; i++) {
+            SymbolInfo a = fromBytes.get(i), b = fromStream.get(i);
+            assertEquals(a.Symbol, b.Symbol);
+            assertEquals(a.Error, b.Error);
+            assertEquals(a.Change, b.Change, 0);
+            assertEquals(a.Percent, b.Percent, 0);
+        }
+    }
+
+    @Test
+    public void matchesSplitBaseline() throws IOException {
+        for (int count : new int[] { 1000, 10000 }) {
+            byte[] payload = Payloads.synthetic(count, 0.05);
+            List<SymbolInfo> expected = Baselines.parseSplit(new ByteArrayInputStream(payload));
+            List<SymbolInfo> slots = new ArrayList<SymbolInfo>();
+            assertEquals(expected.size(), parser.parse(payload, payload.length, slots));
+            for (int i = 0; i < expected.size(); i++) {
+                SymbolInfo e = expected.get(i), a = slots.get(i);
+                assertEquals(e.Symbol, a.Symbol);
+                assertEquals(e.Symbol, e.Error, a.Error);
+                assertEquals(e.Symbol, e.Change, a.Change, 0);
+                assertEquals(e.Symbol, e.Percent, a.Percent, 0);
+            }
+        }
+    }
+
+    private static double parseDecimal(String s) {
+        return QuoteCsvParser.parseDecimal(s.toCharArray(), s.length());
+    }
+
+    @Test
+    public void parseDecimalMatchesParseDouble() {
+        String[] samples = { "0", "0.00", "+0.00", "-0.00", "1", "1.", ".5", "-.5", "+1.23", "-1.23", "1.005", "0.1", "0.07",
+                "123456.78", "99999999999999", "123456789012345678", "0.12345678901234567", "1.5%", "-0.45%" };
+        for (String s : samples) {
+            double expected = Double.parseDouble(s.endsWith("%") ? s.substring(0, s.length() - 1) : s);
+            assertEquals(s, Double.doubleToLongBits(expected), Double.doubleToLongBits(parseDecimal(s)));
+        }
+
+        // Every value the feed can send, and then some.
+        Random random = new Random(Payloads.SEED);
+        for (int i = 0; i < 100000; i++) {
+            int decimals = random.nextInt(5);
+            long unscaled = random.nextLong() % 100000000000L;
+            StringBuilder sb = new StringBuilder(Long.toString(Math.abs(unscaled)));
+            while (sb.length() <= decimals)
+                sb.insert(0, '0');
+            if (decimals > 0)
+                sb.insert(sb.length() - decimals, '.');
+            sb.insert(0, unscaled < 0 ? "-" : random.nextBoolean() ? "+" : "");
+            String s = sb.toString();
+            assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(parseDecimal(s)));
+        }
+    }
+
+    @Test
+    public void parseDecimalRejectsNonNumbers() {
+        for (String s : new String[] { "", "+", "-", ".", "%", "N/A", "1.2.3", "1e5", "12a", "--1" })
+            assertTrue(s, Double.isNaN(parseDecimal(s)));
+    }
+}
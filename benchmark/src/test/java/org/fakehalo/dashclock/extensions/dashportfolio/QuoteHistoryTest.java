@@ -0,0 +1,68 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.Test;
+
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuoteHistoryTest {
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private static long ny(int hour, int minute) {
+        GregorianCalendar cal = new GregorianCalendar(NEW_YORK);
+        cal.clear();
+        cal.set(2024, 5, 3, hour, minute);
+        return cal.getTimeInMillis();
+    }
+
+    @Test
+    public void memoryStaysWithinBound() {
+        QuoteHistory history = new QuoteHistory(NEW_YORK);
+        int symbols = QuoteHistory.MAX_SYMBOLS + 500, samples = QuoteHistory.CAPACITY + 100;
+        for (int i = 0; i < symbols; i++) {
+            for (int n = 0; n < samples; n++)
+                history.record(quote("S" + i, n), ny(9, 30) + n * QuoteHistory.MIN_SPACING_MS);
+            assertTrue(history.memoryBytes() <= QuoteHistory.maxMemoryBytes());
+        }
+        assertEquals(QuoteHistory.maxMemoryBytes(), history.memoryBytes()); // Every series full.
+        assertEquals(0, history.size("S0")); // Least recently updated, dropped.
+        assertEquals(QuoteHistory.CAPACITY, history.size("S" + (symbols - 1)));
+    }
+
+    // Polled every 5 minutes from the pre-market open until the post-market grace period ends.
+    private static QuoteHistory extendedSession(boolean extendedHours) {
+        QuoteHistory history = new QuoteHistory(NEW_YORK);
+        history.setExtendedHours(extendedHours);
+        for (long t = ny(4, 0); t <= ny(20, PollScheduler.CLOSE_GRACE_MINUTES); t += 5 * MINUTE)
+            history.record(quote("AAPL", (t - ny(4, 0)) / MINUTE), t);
+        return history;
+    }
+
+    @Test
+    public void extendedSessionKeepsTheMorning() {
+        double last = (ny(20, PollScheduler.CLOSE_GRACE_MINUTES) - ny(4, 0)) / MINUTE;
+        QuoteHistory history = extendedSession(true);
+        assertTrue(history.size("AAPL") <= QuoteHistory.CAPACITY);
+        assertEquals(0, history.low("AAPL", false), 0); // The 04:00 sample is still there.
+        assertEquals(last, history.high("AAPL", false), 0);
+        assertEquals(last, history.delta("AAPL", false, DAY), 0);
+
+        // Regular spacing over the same session runs out of room and loses the pre-market.
+        assertTrue(extendedSession(false).low("AAPL", false) > 0);
+    }
+
+    @Test
+    public void newDayStartsOver() {
+        QuoteHistory history = new QuoteHistory(NEW_YORK);
+        history.record(quote("AAPL", 1), ny(15, 0));
+        history.record(quote("AAPL", 2), ny(15, 30));
+        history.record(quote("AAPL", 3), ny(15, 30) + DAY);
+        assertEquals(1, history.size("AAPL"));
+    }
+}
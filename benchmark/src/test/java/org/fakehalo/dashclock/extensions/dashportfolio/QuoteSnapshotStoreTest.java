@@ -0,0 +1,120 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.error;
+import static org.fakehalo.dashclock.extensions.dashportfolio.Quotes.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QuoteSnapshotStoreTest {
+    private File file;
+    private QuoteSnapshotStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("quotes", ".snapshot");
+        store = new QuoteSnapshotStore(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void keepsEachEntrysFetchTime() throws IOException {
+        QuoteSnapshotStore.Snapshot snapshot = new QuoteSnapshotStore.Snapshot();
+        snapshot.add(quote("AAPL", 1.25, 0.5), 1000L);
+        snapshot.add(quote("GOOG", -3, -0.75), 2000L);
+        snapshot.add(error("XYZZY"), 3000L);
+        store.save(snapshot);
+
+        QuoteSnapshotStore.Snapshot loaded = store.load();
+        assertEquals(3, loaded.quotes.size());
+        for (int i = 0; i < 3; i++) {
+            SymbolInfo a = snapshot.quotes.get(i), b = loaded.quotes.get(i);
+            assertEquals(a.Symbol, b.Symbol);
+            assertEquals(a.Change, b.Change, 0);
+            assertEquals(a.Percent, b.Percent, 0);
+            assertEquals(a.Error, b.Error);
+            assertEquals(snapshot.fetchedAt.get(i), loaded.fetchedAt.get(i));
+        }
+    }
+
+    @Test
+    public void cacheRestoresOlderQuotesAsStale() throws IOException {
+        QuoteCache cache = new QuoteCache();
+        cache.setTtl(60000);
+        cache.put(quote("AAPL", 1, 1), 0);
+        cache.put(quote("GOOG", 2, 2), 100000);
+        String[] symbols = { "AAPL", "GOOG" };
+
+        QuoteSnapshotStore.Snapshot snapshot = new QuoteSnapshotStore.Snapshot();
+        for (SymbolInfo si : cache.get(symbols))
+            snapshot.add(si, cache.getFetchedAt(si.Symbol));
+        store.save(snapshot);
+
+        QuoteCache restored = new QuoteCache();
+        restored.setTtl(60000);
+        QuoteSnapshotStore.Snapshot loaded = store.load();
+        for (int i = 0; i < loaded.quotes.size(); i++)
+            restored.put(loaded.quotes.get(i), loaded.fetchedAt.get(i));
+        String[] stale = restored.getStale(symbols, 110000);
+        assertEquals(1, stale.length);
+        assertEquals("AAPL", stale[0]);
+    }
+
+    @Test
+    public void corruptionReadsAsNoSnapshot() throws IOException {
+        QuoteSnapshotStore.Snapshot snapshot = new QuoteSnapshotStore.Snapshot();
+        snapshot.add(quote("AAPL", 1, 1), 1000L);
+        store.save(snapshot);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(10);
+            int b = raf.read();
+            raf.seek(10);
+            raf.write(b ^ 0xff);
+        }
+        finally {
+            raf.close();
+        }
+        assertNull(store.load());
+
+        file.delete();
+        assertNull(store.load());
+    }
+
+    // A well formed file from some other version of the format, checksum and all.
+    @Test
+    public void unknownVersionReadsAsNoSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x44505153);
+        out.writeShort(2);
+        out.writeInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            bytes.writeTo(fos);
+        }
+        finally {
+            fos.close();
+        }
+        assertNull(store.load());
+    }
+}
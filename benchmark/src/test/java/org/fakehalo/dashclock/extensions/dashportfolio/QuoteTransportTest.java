@@ -0,0 +1,157 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// QuoteTransport against a local stand-in for the feed: gzip when asked, ETag on /etag, Last-Modified on /modified.
+public class QuoteTransportTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 03 Jun 2024 20:00:00 GMT";
+
+    private HttpServer server;
+    private QuoteTransport transport;
+    private String base;
+    private volatile byte[] body;
+    private final List<String> conditions = Collections.synchronizedList(new ArrayList<String>());
+    private volatile long gzipBytesSent; // Written by the server thread only.
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String symbol : FakeQuoteProvider.syntheticSymbols(2000)) // Well past the initial body buffer.
+            sb.append('"').append(symbol).append("\",+1.25,\"+0.50%\"\r\n");
+        body = sb.toString().getBytes(ASCII);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                conditions.add(ifNoneMatch != null ? ifNoneMatch : ifModifiedSince != null ? ifModifiedSince : "");
+                if (path.equals("/etag"))
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                else if (path.equals("/modified"))
+                    exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                else if (path.equals("/error")) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+                if (ETAG.equals(ifNoneMatch) || LAST_MODIFIED.equals(ifModifiedSince)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] out = body;
+                String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (encoding != null && encoding.contains("gzip")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gz = new GZIPOutputStream(bytes);
+                    gz.write(out);
+                    gz.close();
+                    out = bytes.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    gzipBytesSent += out.length;
+                }
+                exchange.sendResponseHeaders(200, out.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(out);
+                os.close();
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new QuoteTransport();
+    }
+
+    @After
+    public void tearDown() {
+        transport.shutdown();
+        server.stop(0);
+    }
+
+    private void assertBody(QuoteTransport.Response response) {
+        assertFalse(response.notModified);
+        assertEquals(body.length, response.length);
+        for (int i = 0; i < body.length; i++)
+            assertEquals(body[i], response.body[i]);
+    }
+
+    @Test
+    public void gzipBodyIsInflatedAndCounted() throws IOException {
+        assertBody(transport.get(base + "/plain", false));
+        assertBody(transport.get(base + "/plain", false));
+        assertEquals(2, transport.getRequests());
+        assertEquals(gzipBytesSent, transport.getBytesTransferred()); // Compressed bytes, as sent.
+        assertTrue(transport.getBytesTransferred() < 2 * body.length / 4);
+        assertEquals(0, transport.getNotModified());
+    }
+
+    @Test
+    public void connectionsAreReused() throws IOException {
+        for (int i = 0; i < 10; i++)
+            transport.get(base + "/plain", false);
+        assertEquals(10, transport.getRequests());
+        assertEquals(1, transport.getConnectionsOpened());
+    }
+
+    @Test
+    public void etagGivesNotModified() throws IOException {
+        assertBody(transport.get(base + "/etag", true)); // No validator yet, nothing to send.
+        QuoteTransport.Response response = transport.get(base + "/etag", true);
+        assertTrue(response.notModified);
+        assertEquals(0, response.length);
+        assertBody(transport.get(base + "/etag", false)); // Unconditional, the caller lost the last result.
+        assertEquals("", conditions.get(0));
+        assertEquals(ETAG, conditions.get(1));
+        assertEquals("", conditions.get(2));
+        assertEquals(1, transport.getNotModified());
+        assertEquals(gzipBytesSent, transport.getBytesTransferred()); // 304s carry no body.
+        assertEquals(2, transport.getConnectionsOpened()); // The JDK server closes after a 304, reconnected once.
+    }
+
+    @Test
+    public void lastModifiedGivesNotModified() throws IOException {
+        transport.get(base + "/modified", true);
+        assertTrue(transport.get(base + "/modified", true).notModified);
+        assertEquals(LAST_MODIFIED, conditions.get(1));
+        assertEquals(1, transport.getNotModified());
+    }
+
+    @Test
+    public void errorStatusThrowsAndKeepsTheConnection() throws IOException {
+        try {
+            transport.get(base + "/error", false);
+            fail("Expected an IOException");
+        }
+        catch (IOException e) {
+            assertEquals("HTTP 500", e.getMessage());
+        }
+        assertBody(transport.get(base + "/plain", false));
+        assertEquals(2, transport.getRequests());
+    }
+}
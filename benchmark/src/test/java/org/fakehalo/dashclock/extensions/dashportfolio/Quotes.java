@@ -0,0 +1,27 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+// SymbolInfo factories shared by the tests, use with a static import.
+final class Quotes {
+    private Quotes() {
+    }
+
+    static SymbolInfo quote(String symbol, double change, double percent) {
+        SymbolInfo si = new SymbolInfo();
+        si.Symbol = symbol;
+        si.Change = change;
+        si.Percent = percent;
+        return si;
+    }
+
+    // For tests that only look at one of the two, change and percent the same.
+    static SymbolInfo quote(String symbol, double percent) {
+        return quote(symbol, percent, percent);
+    }
+
+    // A row the feed couldn't quote. (ie. "N/A")
+    static SymbolInfo error(String symbol) {
+        SymbolInfo si = quote(symbol, 0, 0);
+        si.Error = true;
+        return si;
+    }
+}
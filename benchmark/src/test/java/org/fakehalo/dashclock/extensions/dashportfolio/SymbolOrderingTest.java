@@ -0,0 +1,116 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.fakehalo.dashclock.extensions.dashportfolio.benchmark.Baselines;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Random quote lists ordered by SymbolOrdering and by the comparator chain it replaced (alphabetical sort, stable key
+// sort, reverse, trim). Symbols are unique, as they are after normalizing.
+public class SymbolOrderingTest {
+    private static final String[] ORDERS = { null, "", SymbolOrdering.ORDER_ALPHA, SymbolOrdering.ORDER_PERCENT,
+            SymbolOrdering.ORDER_PERCENT_REVERSE, SymbolOrdering.ORDER_PRICE, SymbolOrdering.ORDER_PRICE_REVERSE, "bogus" };
+    private static final int[] LIMITS = { 0, 1, 3, 10, 1000 };
+
+    private final SymbolOrdering ordering = new SymbolOrdering();
+
+    // step is the key granularity, coarse steps give plenty of ties.
+    private static List<SymbolInfo> quotes(Random random, int count, double step, int range) {
+        List<SymbolInfo> quotes = new ArrayList<SymbolInfo>(count);
+        List<String> symbols = new ArrayList<String>();
+        while (symbols.size() < count) {
+            String symbol = "S" + Integer.toString(random.nextInt(count * 10), 36).toUpperCase();
+            if (!symbols.contains(symbol))
+                symbols.add(symbol);
+        }
+        for (String symbol : symbols) {
+            SymbolInfo si = new SymbolInfo();
+            si.Symbol = symbol;
+            si.Change = (random.nextInt(2 * range + 1) - range) * step;
+            si.Percent = (random.nextInt(2 * range + 1) - range) * step;
+            quotes.add(si);
+        }
+        return quotes;
+    }
+
+    private static void assertSameOrder(String message, List<SymbolInfo> expected, List<SymbolInfo> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertTrue(message + " at " + i, expected.get(i) == actual.get(i));
+    }
+
+    // Keys in quarters are exact in binary, so the old int truncated hundredths compare exactly.
+    @Test
+    public void matchesOldComparatorChain() {
+        Random random = new Random(2014);
+        for (int run = 0; run < 500; run++) {
+            List<SymbolInfo> quotes = quotes(random, 1 + random.nextInt(60), 0.25, 1 + random.nextInt(8));
+            for (String order : ORDERS) {
+                for (int limit : LIMITS) {
+                    for (boolean reverse : new boolean[] { false, true }) {
+                        String message = order + "/" + limit + "/" + reverse;
+                        assertSameOrder(message, Baselines.order(quotes, order, reverse, limit), ordering.order(quotes, order, reverse, limit));
+                    }
+                }
+            }
+        }
+    }
+
+    // Cent keys, where the old truncation wasn't exact, against the same chain with an exact key compare.
+    @Test
+    public void matchesExactChainOnCents() {
+        Random random = new Random(2015);
+        for (int run = 0; run < 200; run++) {
+            List<SymbolInfo> quotes = quotes(random, 1 + random.nextInt(300), 0.01, 1 + random.nextInt(5000));
+            for (String order : ORDERS) {
+                for (int limit : LIMITS) {
+                    for (boolean reverse : new boolean[] { false, true }) {
+                        String message = order + "/" + limit + "/" + reverse;
+                        assertSameOrder(message, exactChain(quotes, order, reverse, limit), ordering.order(quotes, order, reverse, limit));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void inputIsLeftAlone() {
+        List<SymbolInfo> quotes = quotes(new Random(2016), 100, 0.01, 500);
+        List<SymbolInfo> copy = new ArrayList<SymbolInfo>(quotes);
+        ordering.order(quotes, SymbolOrdering.ORDER_PERCENT, true, 10);
+        assertSameOrder("input", copy, quotes);
+    }
+
+    private static List<SymbolInfo> exactChain(List<SymbolInfo> quotes, final String order, boolean reverse, int limit) {
+        List<SymbolInfo> ret = new ArrayList<SymbolInfo>(quotes);
+        Collections.sort(ret, new Comparator<SymbolInfo>() {
+            public int compare(SymbolInfo s1, SymbolInfo s2) {
+                return s1.Symbol.compareTo(s2.Symbol);
+            }
+        });
+        Collections.sort(ret, new Comparator<SymbolInfo>() {
+            public int compare(SymbolInfo s1, SymbolInfo s2) {
+                if (SymbolOrdering.ORDER_PERCENT.equals(order))
+                    return Double.compare(s2.Percent, s1.Percent);
+                else if (SymbolOrdering.ORDER_PERCENT_REVERSE.equals(order))
+                    return Double.compare(s1.Percent, s2.Percent);
+                else if (SymbolOrdering.ORDER_PRICE.equals(order))
+                    return Double.compare(s2.Change, s1.Change);
+                else if (SymbolOrdering.ORDER_PRICE_REVERSE.equals(order))
+                    return Double.compare(s1.Change, s2.Change);
+                return 0;
+            }
+        });
+        if (reverse)
+            Collections.reverse(ret);
+        return limit > 0 && limit < ret.size() ? ret.subList(0, limit) : ret;
+    }
+}
@@ -0,0 +1,160 @@
+package org.fakehalo.dashclock.extensions.dashportfolio;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Tasks stand in for fetchAndPublish, "publishing" only when their generation is still current.
+public class UpdateCoordinatorTest {
+    private static final long WAIT_SECONDS = 10;
+
+    private final UpdateCoordinator coordinator = new UpdateCoordinator();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final List<Long> published = Collections.synchronizedList(new ArrayList<Long>());
+
+    @After
+    public void tearDown() {
+        coordinator.shutdown();
+    }
+
+    // Blocks the worker until released.
+    private static class Gate implements UpdateCoordinator.Task {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile long generation;
+
+        @Override
+        public void run(long generation) {
+            this.generation = generation;
+            started.countDown();
+            try {
+                release.await(WAIT_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private UpdateCoordinator.Task fetch(final CountDownLatch done) {
+        return new UpdateCoordinator.Task() {
+            @Override
+            public void run(long generation) {
+                fetches.incrementAndGet();
+                if (coordinator.isCurrent(generation))
+                    published.add(generation);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void burstBecomesOneFetch() throws Exception {
+        final int bursts = 20, threads = 8, perThread = 25;
+        for (int b = 0; b < bursts; b++) {
+            // A fetch already running, then update reasons arriving from several threads at once.
+            Gate gate = new Gate();
+            coordinator.request(gate);
+            assertTrue(gate.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final CountDownLatch go = new CountDownLatch(1);
+            List<Thread> senders = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                Thread sender = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            go.await();
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < perThread; i++)
+                            coordinator.request(fetch(done));
+                    }
+                };
+                sender.start();
+                senders.add(sender);
+            }
+            go.countDown();
+            for (Thread sender : senders)
+                sender.join();
+            gate.release.countDown();
+            assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+            assertEquals(b + 1, fetches.get());
+            assertEquals(b + 1, published.size());
+        }
+        assertEquals(bursts * (1 + threads * perThread), coordinator.getRequests());
+        assertEquals(bursts * (threads * perThread - 1), coordinator.getCoalesced());
+        assertEquals(bursts * 2, coordinator.getRuns());
+    }
+
+    @Test
+    public void supersededRunIsNotPublished() throws Exception {
+        final Gate gate = new Gate();
+        final List<Boolean> gateCurrent = new ArrayList<Boolean>();
+        CountDownLatch done = new CountDownLatch(1);
+        long first = coordinator.request(new UpdateCoordinator.Task() {
+            @Override
+            public void run(long generation) {
+                gate.run(generation);
+                gateCurrent.add(coordinator.isCurrent(generation));
+            }
+        });
+        assertTrue(gate.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(coordinator.isCurrent(first));
+
+        long second = coordinator.request(fetch(done));
+        assertFalse(coordinator.isCurrent(first));
+        gate.release.countDown();
+        assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList(false), gateCurrent);
+        assertEquals(Collections.singletonList(second), published);
+    }
+
+    @Test
+    public void cancelDropsQueuedAndRunning() throws Exception {
+        Gate gate = new Gate();
+        long running = coordinator.request(gate);
+        assertTrue(gate.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        CountDownLatch done = new CountDownLatch(1);
+        coordinator.request(fetch(done));
+        coordinator.cancel();
+        assertFalse(coordinator.isCurrent(running));
+        gate.release.countDown();
+
+        // The worker is free again, and the cancelled task never ran.
+        CountDownLatch after = new CountDownLatch(1);
+        long next = coordinator.request(fetch(after));
+        assertTrue(after.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, done.getCount());
+        assertEquals(1, fetches.get());
+        assertEquals(Collections.singletonList(next), published);
+    }
+
+    @Test
+    public void escapedExceptionDoesNotStallTheWorker() throws Exception {
+        coordinator.request(new UpdateCoordinator.Task() {
+            @Override
+            public void run(long generation) {
+                throw new IllegalStateException("Task failed");
+            }
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        coordinator.request(fetch(done));
+        assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+}